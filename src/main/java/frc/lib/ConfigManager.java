@@ -0,0 +1,118 @@
+package frc.lib;
+
+import com.ctre.phoenix6.StatusCode;
+import edu.wpi.first.wpilibj.RobotController;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Applies device configurations off the main loop, and only when they change.
+ *
+ * <p>Phoenix config applies block until the device acknowledges them, which can take tens of
+ * milliseconds. Callers request a setting by name and value; a request for the value already held
+ * returns immediately, otherwise the apply runs on a single background thread so writes to one
+ * device stay in order. A request superseded before it runs is skipped, and a failed apply is
+ * forgotten so the next request retries it.
+ */
+public class ConfigManager {
+  private static final long METRICS_PERIOD_MICROS = 1000000;
+
+  // Last value requested for every setting, removed again if its apply fails
+  private final Map<String, Object> requestedValues = new ConcurrentHashMap<>();
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "ConfigManager");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // Metrics written by the config thread, read and reset by logMetrics()
+  private final AtomicLong applyCount = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+  private final AtomicLong supersededCount = new AtomicLong();
+  private final TimingHistogram applyLatencyHistogram = new TimingHistogram(1000, 100);
+  private volatile String lastFailure = "";
+
+  // Main thread only
+  private long skippedCount = 0;
+  private long metricsWindowStart = 0;
+
+  private static ConfigManager instance = null;
+
+  public static ConfigManager getInstance() {
+    if (instance == null) {
+      instance = new ConfigManager();
+    }
+    return instance;
+  }
+
+  private ConfigManager() {}
+
+  /**
+   * Requests a setting. Main thread only.
+   *
+   * @param name Unique name of the setting, e.g. "TalonFX3/MotorOutput"
+   * @param value Value of the setting, compared with equals() to the last requested value
+   * @param applier Blocking apply call for the value, run on the config thread
+   */
+  public void apply(String name, Object value, Supplier<StatusCode> applier) {
+    if (Objects.equals(requestedValues.get(name), value)) {
+      skippedCount++;
+      return;
+    }
+    requestedValues.put(name, value);
+    executor.execute(() -> runApply(name, value, applier));
+  }
+
+  /** Forgets every requested value, so the next request for each setting applies it again. */
+  public void invalidate() {
+    requestedValues.clear();
+  }
+
+  private void runApply(String name, Object value, Supplier<StatusCode> applier) {
+    if (!Objects.equals(requestedValues.get(name), value)) {
+      supersededCount.incrementAndGet(); // A newer value is queued behind this one
+      return;
+    }
+    long start = RobotController.getFPGATime();
+    StatusCode status = applier.get();
+    applyLatencyHistogram.record(RobotController.getFPGATime() - start);
+    applyCount.incrementAndGet();
+    if (!status.isOK()) {
+      failureCount.incrementAndGet();
+      lastFailure = name + ": " + status.getName();
+      requestedValues.remove(name, value);
+    }
+  }
+
+  /** Logs the apply metrics about once per second. Main thread only. */
+  public void logMetrics() {
+    long now = RobotController.getFPGATime();
+    if (metricsWindowStart == 0) {
+      metricsWindowStart = now;
+      return;
+    }
+    if (now - metricsWindowStart < METRICS_PERIOD_MICROS) {
+      return;
+    }
+    metricsWindowStart = now;
+
+    Logger.recordOutput("ConfigManager/Applies", applyCount.getAndSet(0));
+    Logger.recordOutput("ConfigManager/Failures", failureCount.getAndSet(0));
+    Logger.recordOutput("ConfigManager/Superseded", supersededCount.getAndSet(0));
+    Logger.recordOutput("ConfigManager/Skipped", skippedCount);
+    Logger.recordOutput("ConfigManager/LastFailure", lastFailure);
+    Logger.recordOutput(
+        "ConfigManager/LatencyP50Ms", applyLatencyHistogram.getPercentile(0.5) / 1000.0);
+    Logger.recordOutput("ConfigManager/LatencyMaxMs", applyLatencyHistogram.getMax() / 1000.0);
+    skippedCount = 0;
+    applyLatencyHistogram.reset();
+  }
+}
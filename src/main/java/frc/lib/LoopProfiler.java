@@ -0,0 +1,150 @@
+package frc.lib;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Measures where the command scheduler spends the main loop.
+ *
+ * <p>Subsystems extending {@link SpikeSubsystem} time their own periodic. Command phases are timed
+ * with the {@link CommandScheduler} hooks, which run right after each phase: every hook charges the
+ * time since the previous mark to the phase that just ran. The end of every subsystem periodic and
+ * the end of the button bindings are marks as well, so a command scheduled or interrupted by a
+ * button is also charged for the bindings polled before it.
+ *
+ * <p>Every section records into a fixed-bucket {@link TimingHistogram}, so timing never allocates
+ * once a section exists. The 50th and 99th percentile and the maximum of every section are logged
+ * once per second. AdvantageKit already logs its own time per cycle under LoggedRobot. Main thread
+ * only.
+ */
+public class LoopProfiler {
+  private static final long LOG_PERIOD_NANOS = 1000000000;
+  private static final long BUCKET_WIDTH_MICROS = 50;
+  private static final int BUCKET_COUNT = 400; // 20 ms
+
+  private static final int INITIALIZE = 0;
+  private static final int EXECUTE = 1;
+  private static final int END = 2;
+
+  /** Histogram of one timed section, with its log keys. */
+  static class Section {
+    private final TimingHistogram histogram =
+        new TimingHistogram(BUCKET_WIDTH_MICROS, BUCKET_COUNT);
+    private final String p50Key;
+    private final String p99Key;
+    private final String maxKey;
+
+    private Section(String key) {
+      p50Key = "LoopProfiler/" + key + "/P50Ms";
+      p99Key = "LoopProfiler/" + key + "/P99Ms";
+      maxKey = "LoopProfiler/" + key + "/MaxMs";
+    }
+  }
+
+  private final List<Section> sections = new ArrayList<>();
+  private final Map<String, Section[]> commandSections = new HashMap<>(); // By command name
+  private final Section schedulerSection = addSection("Scheduler");
+  private final Section buttonsSection = addSection("Buttons");
+
+  private long cycleStartNanos = 0;
+  private long markNanos = 0;
+  private long logWindowStartNanos = 0;
+
+  private static LoopProfiler instance = null;
+
+  public static LoopProfiler getInstance() {
+    if (instance == null) {
+      instance = new LoopProfiler();
+    }
+    return instance;
+  }
+
+  private LoopProfiler() {}
+
+  /**
+   * Registers the scheduler hooks and marks the end of the button bindings. Call once after every
+   * subsystem and binding exists, bindings added later are charged to the commands after them.
+   */
+  public void install() {
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    scheduler.getDefaultButtonLoop().bind(() -> mark(buttonsSection));
+    scheduler.onCommandInitialize(command -> mark(getCommandSection(command, INITIALIZE)));
+    scheduler.onCommandExecute(command -> mark(getCommandSection(command, EXECUTE)));
+    scheduler.onCommandFinish(command -> mark(getCommandSection(command, END)));
+    scheduler.onCommandInterrupt(command -> mark(getCommandSection(command, END)));
+  }
+
+  /** Starts timing a scheduler run, call right before {@link CommandScheduler#run()}. */
+  public void startCycle() {
+    cycleStartNanos = System.nanoTime();
+    markNanos = cycleStartNanos;
+  }
+
+  /** Ends timing a scheduler run and logs about once per second. */
+  public void endCycle() {
+    long now = System.nanoTime();
+    schedulerSection.histogram.record((now - cycleStartNanos) / 1000);
+
+    if (logWindowStartNanos == 0) {
+      logWindowStartNanos = now;
+      return;
+    }
+    if (now - logWindowStartNanos < LOG_PERIOD_NANOS) {
+      return;
+    }
+    logWindowStartNanos = now;
+    for (Section section : sections) {
+      Logger.recordOutput(section.p50Key, section.histogram.getPercentile(0.5) / 1000.0);
+      Logger.recordOutput(section.p99Key, section.histogram.getPercentile(0.99) / 1000.0);
+      Logger.recordOutput(section.maxKey, section.histogram.getMax() / 1000.0);
+      section.histogram.reset();
+    }
+  }
+
+  /**
+   * Adds a section to time and log.
+   *
+   * @param key Log key of the section below "LoopProfiler/"
+   */
+  Section addSection(String key) {
+    Section section = new Section(key);
+    sections.add(section);
+    return section;
+  }
+
+  /**
+   * Records a subsystem periodic that started at the given time and ends now.
+   *
+   * @param section Section of the subsystem
+   * @param startNanos Start of the periodic from {@link System#nanoTime()}
+   */
+  void recordSubsystem(Section section, long startNanos) {
+    markNanos = System.nanoTime();
+    section.histogram.record((markNanos - startNanos) / 1000);
+  }
+
+  /** Charges the time since the last mark to a section. */
+  private void mark(Section section) {
+    long now = System.nanoTime();
+    section.histogram.record((now - markNanos) / 1000);
+    markNanos = now;
+  }
+
+  private Section getCommandSection(Command command, int phase) {
+    Section[] phases = commandSections.get(command.getName());
+    if (phases == null) {
+      String key = "Commands/" + command.getName();
+      phases =
+          new Section[] {
+            addSection(key + "/Initialize"), addSection(key + "/Execute"), addSection(key + "/End")
+          };
+      commandSections.put(command.getName(), phases);
+    }
+    return phases[phase];
+  }
+}
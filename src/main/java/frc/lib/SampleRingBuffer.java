@@ -0,0 +1,149 @@
+package frc.lib;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer of timestamped samples.
+ *
+ * <p>Values and timestamps are stored side by side in primitive arrays, so neither offering nor
+ * draining boxes or allocates. Exactly one thread may call {@link #offer} and exactly one thread
+ * may call {@link #drain}; the volatile head and tail counters publish the samples between them.
+ *
+ * <p>Every sample is stored with the sequence number of the producer cycle that offered it, which
+ * lets a consumer drain several buffers fed by the same producer up to one common point without a
+ * lock. A producer may skip cycles, e.g. for a sensor that updates slower than it is polled.
+ */
+public class SampleRingBuffer {
+  private final double[] values;
+  private final long[] timestamps;
+  private final long[] sequences;
+  private final int mask;
+
+  private volatile long head = 0; // Next sample to write, only written by the producer
+  private volatile long tail = 0; // Next sample to read, only written by the consumer
+
+  /**
+   * Creates a ring buffer.
+   *
+   * @param capacity Minimum number of samples held, rounded up to the next power of two
+   */
+  public SampleRingBuffer(int capacity) {
+    if (capacity < 1 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Invalid ring buffer capacity: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    values = new double[size];
+    timestamps = new long[size];
+    sequences = new long[size];
+    mask = size - 1;
+  }
+
+  /**
+   * Adds a sample. Producer thread only.
+   *
+   * @param value Sample value
+   * @param timestamp Sample timestamp in microseconds
+   * @param sequence Sequence number of the producer cycle, never lower than the last one offered
+   * @return False if the buffer is full and the sample was dropped
+   */
+  public boolean offer(double value, long timestamp, long sequence) {
+    long currentHead = head;
+    if (currentHead - tail >= values.length) {
+      return false;
+    }
+    int index = (int) (currentHead & mask);
+    values[index] = value;
+    timestamps[index] = timestamp;
+    sequences[index] = sequence;
+    head = currentHead + 1; // Publishes the sample to the consumer
+    return true;
+  }
+
+  /**
+   * Moves every available sample (up to the length of the output arrays) into the caller's arrays.
+   * Consumer thread only.
+   *
+   * @param valuesOut Array to fill with sample values
+   * @param timestampsOut Array to fill with sample timestamps in microseconds
+   * @return Number of samples written to the output arrays
+   */
+  public int drain(double[] valuesOut, long[] timestampsOut) {
+    return drain(valuesOut, timestampsOut, Long.MAX_VALUE);
+  }
+
+  /**
+   * Moves the available samples with a sequence number below {@code endSequence} (up to the length
+   * of the output arrays) into the caller's arrays. Consumer thread only.
+   *
+   * @param valuesOut Array to fill with sample values
+   * @param timestampsOut Array to fill with sample timestamps in microseconds
+   * @param endSequence Sequence number of the first sample to leave in the buffer
+   * @return Number of samples written to the output arrays
+   */
+  public int drain(double[] valuesOut, long[] timestampsOut, long endSequence) {
+    return drain(valuesOut, timestampsOut, Long.MIN_VALUE, endSequence);
+  }
+
+  /**
+   * Moves the available samples with a sequence number from {@code startSequence} up to {@code
+   * endSequence} (up to the length of the output arrays) into the caller's arrays, after discarding
+   * the older ones. Lets several buffers be drained over the same producer cycles. Consumer thread
+   * only.
+   *
+   * @param valuesOut Array to fill with sample values
+   * @param timestampsOut Array to fill with sample timestamps in microseconds
+   * @param startSequence Sequence number of the first sample to return
+   * @param endSequence Sequence number of the first sample to leave in the buffer
+   * @return Number of samples written to the output arrays
+   */
+  public int drain(double[] valuesOut, long[] timestampsOut, long startSequence, long endSequence) {
+    long currentHead = head; // Read first so the samples before it are visible
+    long currentTail = tail;
+    long discardEnd = Math.min(startSequence, endSequence);
+    while (currentTail < currentHead && sequences[(int) (currentTail & mask)] < discardEnd) {
+      currentTail++;
+    }
+    int maxCount = Math.min(valuesOut.length, timestampsOut.length);
+    int count = 0;
+    while (currentTail + count < currentHead && count < maxCount) {
+      int index = (int) ((currentTail + count) & mask);
+      if (sequences[index] >= endSequence) {
+        break;
+      }
+      valuesOut[count] = values[index];
+      timestampsOut[count] = timestamps[index];
+      count++;
+    }
+    tail = currentTail + count; // Releases the slots back to the producer
+    return count;
+  }
+
+  /**
+   * Returns the newest sample value without draining it, or NaN if nothing was offered yet. Safe to
+   * call from any thread, since the producer does not write the newest slot again until it wraps.
+   */
+  public double peekLatest() {
+    long currentHead = head;
+    return currentHead == 0 ? Double.NaN : values[(int) ((currentHead - 1) & mask)];
+  }
+
+  /**
+   * Returns the sequence number of the oldest sample waiting to be drained, or {@link
+   * Long#MAX_VALUE} if there is none. Consumer thread only.
+   */
+  public long getOldestSequence() {
+    long currentTail = tail;
+    return currentTail < head ? sequences[(int) (currentTail & mask)] : Long.MAX_VALUE;
+  }
+
+  /** Returns the number of samples waiting to be drained. */
+  public int size() {
+    return (int) (head - tail);
+  }
+
+  /** Returns the maximum number of samples the buffer can hold. */
+  public int capacity() {
+    return values.length;
+  }
+}
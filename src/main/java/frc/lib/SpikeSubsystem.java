@@ -0,0 +1,106 @@
+package frc.lib;
+
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+/**
+ * Base class for our subsystems, which times every periodic with the {@link LoopProfiler}.
+ *
+ * <p>Subclasses put their periodic work in {@link #subsystemPeriodic()} instead of overriding
+ * {@link #periodic()}. A subsystem that does not need every cycle declares a slower {@link
+ * UpdateRate}, and its updates are staggered against the other slow subsystems so they do not all
+ * land on the same cycle. Between updates its getters return the values of the last update. While
+ * something needs it every cycle, e.g. a command running a controller in it, {@link
+ * #setFullRate(boolean)} runs it at 50 Hz without losing its place in the stagger.
+ */
+public abstract class SpikeSubsystem extends SubsystemBase {
+  /** How often {@link #subsystemPeriodic()} runs. */
+  public enum UpdateRate {
+    HZ_50(1),
+    HZ_25(2),
+    HZ_10(5);
+
+    private final int cyclePeriod; // Scheduler runs per update
+
+    UpdateRate(int cyclePeriod) {
+      this.cyclePeriod = cyclePeriod;
+    }
+  }
+
+  // Number of subsystems updating in each cycle of the repeating pattern, 10 cycles fits every rate
+  private static final int[] cycleLoads = new int[10];
+
+  private final LoopProfiler.Section profilerSection;
+  private final UpdateRate updateRate;
+  private int cyclesUntilUpdate;
+  private boolean fullRate = false;
+
+  /** Creates a subsystem that updates every cycle. */
+  protected SpikeSubsystem() {
+    this(UpdateRate.HZ_50);
+  }
+
+  /**
+   * Creates a subsystem that updates at the given rate.
+   *
+   * @param updateRate Rate of {@link #subsystemPeriodic()}
+   */
+  protected SpikeSubsystem(UpdateRate updateRate) {
+    profilerSection = LoopProfiler.getInstance().addSection("Subsystems/" + getName());
+    this.updateRate = updateRate;
+    cyclesUntilUpdate = claimLeastLoadedOffset(updateRate.cyclePeriod);
+  }
+
+  @Override
+  public final void periodic() {
+    // Keeps counting while at full rate, so the staggered updates resume on the same cycles
+    boolean due = cyclesUntilUpdate == 0;
+    cyclesUntilUpdate = due ? updateRate.cyclePeriod - 1 : cyclesUntilUpdate - 1;
+    if (!due && !fullRate) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    subsystemPeriodic();
+    LoopProfiler.getInstance().recordSubsystem(profilerSection, start);
+  }
+
+  /** Returns the rate of {@link #subsystemPeriodic()}. */
+  public UpdateRate getUpdateRate() {
+    return fullRate ? UpdateRate.HZ_50 : updateRate;
+  }
+
+  /**
+   * Runs {@link #subsystemPeriodic()} every cycle while set, regardless of the declared rate.
+   *
+   * @param fullRate Whether to update every cycle
+   */
+  protected void setFullRate(boolean fullRate) {
+    this.fullRate = fullRate;
+  }
+
+  /** Called at the subsystem's update rate in place of {@link #periodic()}. */
+  protected abstract void subsystemPeriodic();
+
+  /**
+   * Returns the first cycle to update on, picking the offset whose busiest cycle has the fewest
+   * subsystems, and counts this subsystem in every cycle it will update on.
+   */
+  private static int claimLeastLoadedOffset(int cyclePeriod) {
+    int bestOffset = 0;
+    int bestLoad = Integer.MAX_VALUE;
+    for (int offset = 0; offset < cyclePeriod; offset++) {
+      int load = 0;
+      for (int cycle = offset; cycle < cycleLoads.length; cycle += cyclePeriod) {
+        load = Math.max(load, cycleLoads[cycle]);
+      }
+      if (load < bestLoad) {
+        bestOffset = offset;
+        bestLoad = load;
+      }
+    }
+    for (int cycle = bestOffset; cycle < cycleLoads.length; cycle += cyclePeriod) {
+      cycleLoads[cycle]++;
+    }
+    return bestOffset;
+  }
+}
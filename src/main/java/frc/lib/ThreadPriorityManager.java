@@ -0,0 +1,293 @@
+package frc.lib;
+
+import edu.wpi.first.wpilibj.Threads;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Assigns scheduling priorities and CPU affinities to the robot's threads from one table.
+ *
+ * <p>Threads we own call {@link #configureCurrentThread} when they start, which sets a real-time
+ * priority right away through {@link Threads}. Threads started by libraries are found by scanning
+ * {@code /proc/self/task} for their names. Affinities, nice values and the priorities of library
+ * threads are set with {@code chrt}, {@code renice} and {@code taskset} on a background thread.
+ * Everything is best effort: on a platform without these tools the failures are only counted.
+ *
+ * <p>The background thread also reads every configured thread's {@code schedstat} once per second,
+ * giving its CPU time and how long it waited to be scheduled.
+ *
+ * <p>A real-time thread that never blocks would starve every normal thread on its core. The table
+ * only gives real-time priorities to threads that block every cycle, and relies on the kernel's
+ * real-time throttling ({@code /proc/sys/kernel/sched_rt_runtime_us}, 950 ms of every second by
+ * default) as the last safeguard. The budget is read at startup and logged, -1 means throttling is
+ * off. The main thread only keeps its real-time priority while the robot is enabled, see {@link
+ * #setCurrentThreadRealTime}.
+ */
+public class ThreadPriorityManager {
+  /** Name of the main robot thread in the table. */
+  public static final String ROBOT_MAIN_THREAD = "RobotMain";
+
+  private static final long SCAN_PERIOD_SECONDS = 1;
+  private static final Path RT_RUNTIME_PATH = Path.of("/proc/sys/kernel/sched_rt_runtime_us");
+
+  private enum Policy {
+    /** Real-time FIFO scheduling, higher priorities run first. */
+    FIFO,
+    /** Normal time sharing, higher nice values get less CPU. */
+    NORMAL
+  }
+
+  /**
+   * One row of the table.
+   *
+   * @param name Thread name, library threads are matched by the start of their kernel thread name
+   * @param policy Scheduling policy
+   * @param priority FIFO priority from 1 to 99, or nice value from -20 to 19
+   * @param cpus CPU list for taskset, e.g. "1", or null to run on any core
+   */
+  private record ThreadConfig(String name, Policy policy, int priority, String cpus) {}
+
+  // Odometry first and the AdvantageKit receiver thread, which runs the WPILOG writer, last. The
+  // odometry and fast control loops share core 1 so the main loop keeps core 0. NT4 is served by
+  // native ntcore threads without a name to match, they keep the default scheduling.
+  private static final List<ThreadConfig> TABLE =
+      List.of(
+          new ThreadConfig("PhoenixOdometryThread", Policy.FIFO, 20, "1"),
+          new ThreadConfig("DriveFastLoop", Policy.FIFO, 15, "1"),
+          new ThreadConfig(ROBOT_MAIN_THREAD, Policy.FIFO, 10, "0"),
+          new ThreadConfig("VisionWorker", Policy.NORMAL, 0, null),
+          new ThreadConfig("ConfigManager", Policy.NORMAL, 5, null),
+          new ThreadConfig("AdvantageKit", Policy.NORMAL, 10, null));
+
+  // Kernel thread ids configured so far, by table row. Background thread only.
+  private final Map<Integer, ThreadConfig> configuredThreads = new HashMap<>();
+  private final Map<Integer, long[]> lastSchedstats = new HashMap<>(); // CPU ns, wait ns, slices
+  private long lastScanNanos = 0;
+
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "ThreadPriorityManager");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final AtomicLong failureCount = new AtomicLong();
+  private final long rtRuntimeMicros = readRtRuntime(); // Per second, -1 if unlimited
+  private final Map<String, Boolean> realTimeEnabled = new HashMap<>(); // Main thread only
+
+  // Per table row: CPU percent, average scheduling wait per time slice in microseconds, and the
+  // number of threads configured. Written by the background thread, logged by logMetrics().
+  private volatile double[][] metrics = new double[TABLE.size()][3];
+  private final String[] metricKeyPrefixes = new String[TABLE.size()];
+
+  private static ThreadPriorityManager instance = null;
+
+  public static synchronized ThreadPriorityManager getInstance() {
+    if (instance == null) {
+      instance = new ThreadPriorityManager();
+    }
+    return instance;
+  }
+
+  private ThreadPriorityManager() {
+    for (int i = 0; i < TABLE.size(); i++) {
+      metricKeyPrefixes[i] = "Threads/" + TABLE.get(i).name() + "/";
+    }
+    executor.scheduleAtFixedRate(this::scan, 0, SCAN_PERIOD_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Applies the table row for the calling thread. A real-time priority is set immediately, the
+   * affinity and nice value shortly after on the background thread.
+   *
+   * @param name Name of the table row
+   */
+  public void configureCurrentThread(String name) {
+    ThreadConfig config = findConfig(name);
+    if (config == null) {
+      return;
+    }
+    if (config.policy() == Policy.FIFO
+        && !Threads.setCurrentThreadPriority(true, config.priority())) {
+      failureCount.incrementAndGet();
+    }
+    int tid = getCurrentThreadId();
+    if (tid < 0) {
+      failureCount.incrementAndGet();
+      return;
+    }
+    executor.execute(() -> configure(tid, config, config.policy() == Policy.NORMAL));
+  }
+
+  /**
+   * Switches the calling thread between its table row's real-time priority and normal scheduling,
+   * e.g. to give the CPU back to the logging and NT threads while the robot is disabled. Does
+   * nothing if the state did not change. Main thread only.
+   *
+   * @param name Name of the table row
+   * @param realTime Whether to run at the row's real-time priority
+   */
+  public void setCurrentThreadRealTime(String name, boolean realTime) {
+    ThreadConfig config = findConfig(name);
+    if (config == null || config.policy() != Policy.FIFO) {
+      return;
+    }
+    Boolean current = realTimeEnabled.put(name, realTime);
+    if (current != null && current == realTime) {
+      return;
+    }
+    if (!Threads.setCurrentThreadPriority(realTime, realTime ? config.priority() : 0)) {
+      failureCount.incrementAndGet();
+    }
+  }
+
+  /** Logs the per-thread metrics. Main thread only. */
+  public void logMetrics() {
+    double[][] current = metrics;
+    for (int i = 0; i < TABLE.size(); i++) {
+      Logger.recordOutput(metricKeyPrefixes[i] + "CpuPercent", current[i][0]);
+      Logger.recordOutput(metricKeyPrefixes[i] + "SchedWaitUs", current[i][1]);
+      Logger.recordOutput(metricKeyPrefixes[i] + "Count", (int) current[i][2]);
+    }
+    Logger.recordOutput("Threads/ConfigFailures", failureCount.get());
+    Logger.recordOutput("Threads/RtRuntimeUs", rtRuntimeMicros);
+  }
+
+  /** Returns the kernel's real-time budget per second in microseconds, or -1 if unlimited. */
+  private static long readRtRuntime() {
+    try {
+      return Long.parseLong(Files.readString(RT_RUNTIME_PATH).trim());
+    } catch (IOException | RuntimeException e) {
+      return -1;
+    }
+  }
+
+  /** Configures new library threads and updates the metrics. Background thread only. */
+  private void scan() {
+    long now = System.nanoTime();
+    double windowNanos = now - lastScanNanos;
+    lastScanNanos = now;
+
+    double[][] newMetrics = new double[TABLE.size()][3];
+    long[] waitNanos = new long[TABLE.size()];
+    long[] slices = new long[TABLE.size()];
+    try (Stream<Path> tasks = Files.list(Path.of("/proc/self/task"))) {
+      for (Path task : (Iterable<Path>) tasks::iterator) {
+        int tid = Integer.parseInt(task.getFileName().toString());
+        ThreadConfig config = configuredThreads.get(tid);
+        if (config == null) {
+          config = findConfigByThreadName(Files.readString(task.resolve("comm")).trim());
+          if (config == null) {
+            continue;
+          }
+          configure(tid, config, true);
+        }
+
+        int row = TABLE.indexOf(config);
+        newMetrics[row][2]++;
+        long[] schedstat = readSchedstat(task);
+        if (schedstat == null) {
+          continue;
+        }
+        long[] last = lastSchedstats.put(tid, schedstat);
+        if (last != null) {
+          newMetrics[row][0] += (schedstat[0] - last[0]) / windowNanos * 100.0;
+          waitNanos[row] += schedstat[1] - last[1];
+          slices[row] += schedstat[2] - last[2];
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // No procfs on this platform
+      return;
+    }
+    for (int row = 0; row < TABLE.size(); row++) {
+      newMetrics[row][1] = slices[row] > 0 ? waitNanos[row] / (double) slices[row] / 1000.0 : 0.0;
+    }
+    metrics = newMetrics;
+  }
+
+  /**
+   * Returns the CPU time and the time spent waiting on the run queue in nanoseconds, and the number
+   * of time slices, all since the thread started. Null if the kernel does not provide them.
+   */
+  private static long[] readSchedstat(Path task) {
+    try {
+      String[] fields = Files.readString(task.resolve("schedstat")).trim().split(" ");
+      return new long[] {
+        Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2])
+      };
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /** Applies a table row to a thread. Background thread only. */
+  private void configure(int tid, ThreadConfig config, boolean setPolicy) {
+    configuredThreads.put(tid, config);
+    if (setPolicy) {
+      if (config.policy() == Policy.FIFO) {
+        run("chrt", "-f", "-p", Integer.toString(config.priority()), Integer.toString(tid));
+      } else {
+        run("renice", "-n", Integer.toString(config.priority()), "-p", Integer.toString(tid));
+      }
+    }
+    if (config.cpus() != null) {
+      run("taskset", "-p", "-c", config.cpus(), Integer.toString(tid));
+    }
+  }
+
+  private void run(String... command) {
+    try {
+      Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+      process.getInputStream().readAllBytes();
+      if (!process.waitFor(1, TimeUnit.SECONDS) || process.exitValue() != 0) {
+        failureCount.incrementAndGet();
+      }
+    } catch (IOException e) {
+      failureCount.incrementAndGet();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static ThreadConfig findConfig(String name) {
+    for (ThreadConfig config : TABLE) {
+      if (config.name().equals(name)) {
+        return config;
+      }
+    }
+    return null;
+  }
+
+  private static ThreadConfig findConfigByThreadName(String threadName) {
+    for (ThreadConfig config : TABLE) {
+      // Kernel thread names are cut to 15 characters
+      String name = config.name();
+      if (threadName.startsWith(name.substring(0, Math.min(name.length(), 15)))) {
+        return config;
+      }
+    }
+    return null;
+  }
+
+  /** Returns the kernel thread id of the calling thread, or -1 if unavailable. */
+  private static int getCurrentThreadId() {
+    try {
+      // Links to "<pid>/task/<tid>"
+      Path link = Files.readSymbolicLink(Path.of("/proc/thread-self"));
+      return Integer.parseInt(link.getFileName().toString());
+    } catch (IOException | RuntimeException e) {
+      return -1;
+    }
+  }
+}
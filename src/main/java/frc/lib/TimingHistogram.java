@@ -0,0 +1,98 @@
+package frc.lib;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket histogram of durations in microseconds.
+ *
+ * <p>Buckets are linear and allocated once, so recording never allocates. Values past the last
+ * bucket are counted in an overflow bucket and still tracked by {@link #getMax()}. Counts are
+ * atomic, so one thread may record while another reads and resets.
+ */
+public class TimingHistogram {
+  private final long bucketWidthMicros;
+  private final AtomicLongArray counts; // Last slot is the overflow bucket
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Creates a histogram covering {@code bucketWidthMicros * bucketCount} microseconds.
+   *
+   * @param bucketWidthMicros Width of every bucket in microseconds
+   * @param bucketCount Number of buckets before the overflow bucket
+   */
+  public TimingHistogram(long bucketWidthMicros, int bucketCount) {
+    if (bucketWidthMicros <= 0 || bucketCount <= 0) {
+      throw new IllegalArgumentException("Histogram buckets must be positive");
+    }
+    this.bucketWidthMicros = bucketWidthMicros;
+    counts = new AtomicLongArray(bucketCount + 1);
+  }
+
+  /** Records a duration in microseconds, negative durations are recorded as zero. */
+  public void record(long micros) {
+    long value = Math.max(0, micros);
+    int bucket = (int) Math.min(value / bucketWidthMicros, counts.length() - 1);
+    counts.incrementAndGet(bucket);
+    count.incrementAndGet();
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  /** Returns the number of recorded durations. */
+  public long getCount() {
+    return count.get();
+  }
+
+  /** Returns the largest recorded duration in microseconds. */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns an upper bound for the given percentile in microseconds, accurate to one bucket width.
+   * Percentiles that land in the overflow bucket return the maximum.
+   *
+   * @param percentile Percentile from 0.0 to 1.0
+   */
+  public long getPercentile(double percentile) {
+    long total = count.get();
+    if (total == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(percentile * total);
+    long seen = 0;
+    for (int i = 0; i < counts.length() - 1; i++) {
+      seen += counts.get(i);
+      if (seen >= Math.max(1, target)) {
+        return Math.min((i + 1) * bucketWidthMicros, max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Copies the bucket counts into the caller's array, the overflow bucket last.
+   *
+   * @param countsOut Array of at least {@link #getBucketCount()} + 1 elements
+   */
+  public void getBucketCounts(long[] countsOut) {
+    for (int i = 0; i < counts.length(); i++) {
+      countsOut[i] = counts.get(i);
+    }
+  }
+
+  /** Returns the number of buckets, not including the overflow bucket. */
+  public int getBucketCount() {
+    return counts.length() - 1;
+  }
+
+  /** Clears every bucket. */
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    max.set(0);
+  }
+}
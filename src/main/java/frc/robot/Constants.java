@@ -34,4 +34,24 @@ public final class Constants {
     /** Replaying from a log file. */
     REPLAY
   }
+
+  /**
+   * Trust of the pose estimate sources, as standard deviations. The vision correction uses a Kalman
+   * gain per axis from the odometry and vision variances, so only their ratio matters.
+   *
+   * <p>Tuning: the odometry values start at the WPILib pose estimator defaults. Drive logs the
+   * gains of every measurement under Drive/VisionGains and Vision logs the frames it fuses. Raise
+   * the odometry values if the estimate corrects too slowly after wheel slip or a collision, lower
+   * them if it jitters while the robot stands still in front of a tag. The vision coefficients
+   * should match the spread of the logged frame poses at known distances with the robot still.
+   */
+  public static final class PoseEstimatorConstants {
+    // Odometry x and y in meters and rotation in radians
+    public static final double[] ODOMETRY_STD_DEVS = {0.1, 0.1, 0.1};
+
+    // Vision, scaled by the average tag distance squared over the tag count
+    public static final double VISION_XY_STD_DEV_COEFFICIENT = 0.05;
+    public static final double VISION_THETA_STD_DEV_COEFFICIENT = 0.1;
+    public static final double VISION_LATENCY_STD_DEV_SCALE = 5.0; // Per second of latency
+  }
 }
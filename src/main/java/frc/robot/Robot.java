@@ -13,8 +13,12 @@
 
 package frc.robot;
 
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.lib.ConfigManager;
+import frc.lib.LoopProfiler;
+import frc.lib.ThreadPriorityManager;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -99,9 +103,15 @@ public class Robot extends LoggedRobot {
     // Start AdvantageKit logger
     Logger.start();
 
+    // Set the priorities and affinities of this thread and the ones started so far, later threads
+    // are picked up by the manager's periodic scan
+    ThreadPriorityManager.getInstance()
+        .configureCurrentThread(ThreadPriorityManager.ROBOT_MAIN_THREAD);
+
     // Instantiate our RobotContainer. This will perform all our button bindings,
     // and put our autonomous chooser on the dashboard.
     robotContainer = new RobotContainer();
+    LoopProfiler.getInstance().install();
   }
 
   void SetupLog() {
@@ -153,7 +163,15 @@ public class Robot extends LoggedRobot {
     // finished or interrupted commands, and running subsystem periodic() methods.
     // This must be called from the robot's periodic block in order for anything in
     // the Command-based framework to work.
+    LoopProfiler.getInstance().startCycle();
     CommandScheduler.getInstance().run();
+    LoopProfiler.getInstance().endCycle();
+    ConfigManager.getInstance().logMetrics();
+    // The main loop only needs its real-time priority while it drives the robot
+    ThreadPriorityManager.getInstance()
+        .setCurrentThreadRealTime(
+            ThreadPriorityManager.ROBOT_MAIN_THREAD, DriverStation.isEnabled());
+    ThreadPriorityManager.getInstance().logMetrics();
   }
 
   /** This function is called once when the robot is disabled. */
@@ -35,6 +35,9 @@ import frc.robot.subsystems.drive.ModuleIOTalonFX;
 import frc.robot.subsystems.intake.Intake;
 import frc.robot.subsystems.launcher.Launcher;
 import frc.robot.subsystems.leds.Led;
+import frc.robot.subsystems.vision.Vision;
+import frc.robot.subsystems.vision.VisionIO;
+import frc.robot.subsystems.vision.VisionIOLimelight;
 
 /**
  * This class is where the bulk of the robot should be declared. Since Command-based is a
@@ -46,7 +49,7 @@ public class RobotContainer {
   // Subsystems
   private final Drive drive;
   private final Launcher launcher;
-  // private final Vision vision;
+  private final Vision vision;
   private final Intake intake;
   private final Led led;
 
@@ -76,6 +79,8 @@ public class RobotContainer {
                 new ModuleIOTalonFX(1),
                 new ModuleIOTalonFX(2),
                 new ModuleIOTalonFX(3));
+        // Cameras without a transform use the location set in their web UI
+        vision = new Vision(drive, new VisionIOLimelight("limelight"));
         break;
 
       default:
@@ -87,10 +92,10 @@ public class RobotContainer {
                 new ModuleIO() {},
                 new ModuleIO() {},
                 new ModuleIO() {});
+        vision = new Vision(drive, new VisionIO() {});
         break;
     }
     // Initalize subsystems
-    // vision = new Vision();
     launcher = new Launcher();
     intake = new Intake(drive);
     led = new Led(1, launcher);
@@ -151,6 +156,17 @@ public class RobotContainer {
                 () -> driverController.getLeftTriggerAxis(),
                 () -> driverController.getRightTriggerAxis()));
     */
+    /* Limelight aiming command */
+    driverController
+        .b()
+        .whileTrue(
+            SubsystemControl.limelightDrive(
+                drive,
+                vision,
+                () -> -driverController.getLeftY(),
+                () -> -driverController.getLeftX(),
+                () -> -driverController.getRightX()));
+
     /* Brake command */
     driverController.x().onTrue(Commands.runOnce(drive::stopWithX, drive));
 
@@ -145,7 +145,10 @@ public class SubsystemControl {
                   omega * drive.getMaxAngularSpeedRadPerSec(),
                   drive.getRotation()));
         },
-        drive);
+        drive)
+        // Switch the camera to its aiming pipeline while this runs
+        .beforeStarting(() -> vision.setAiming(true))
+        .finallyDo(() -> vision.setAiming(false));
   }
 
   public static Command intakeWithColorSensor(
@@ -17,43 +17,127 @@ import com.pathplanner.lib.auto.AutoBuilder;
 import com.pathplanner.lib.pathfinding.Pathfinding;
 import com.pathplanner.lib.util.HolonomicPathFollowerConfig;
 import com.pathplanner.lib.util.ReplanningConfig;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.lib.SpikeSubsystem;
+import frc.lib.ThreadPriorityManager;
+import frc.robot.Constants.PoseEstimatorConstants;
 import frc.robot.util.LocalADStarAK;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.littletonrobotics.junction.Logger;
 
-public class Drive extends SubsystemBase {
+public class Drive extends SpikeSubsystem {
   private static final double MAX_LINEAR_SPEED = Units.feetToMeters(14.5);
   private static final double TRACK_WIDTH_X = Units.inchesToMeters(21.73);
   private static final double TRACK_WIDTH_Y = Units.inchesToMeters(21.73);
   private static final double DRIVE_BASE_RADIUS =
       Math.hypot(TRACK_WIDTH_X / 2.0, TRACK_WIDTH_Y / 2.0);
   private static final double MAX_ANGULAR_SPEED = MAX_LINEAR_SPEED / DRIVE_BASE_RADIUS;
+  private static final double POSE_HISTORY_SECONDS = 2.0;
+  // Setpoint limits, the wheel acceleration keeps the drive motors under their current limit
+  private static final double MAX_WHEEL_ACCEL = 8.0; // Meters per sec squared
+  private static final double MAX_STEER_VELOCITY = Units.degreesToRadians(720.0);
+  private static final double MAX_CHASSIS_JERK = 60.0; // Meters per sec cubed
+  // Runs heading control, setpoint generation and module commands on a dedicated thread at the
+  // fast loop rate instead of in the 50 Hz command loop
+  private static final boolean FAST_LOOP_ENABLED = false;
+  private static final double FAST_LOOP_PERIOD = 1.0 / 200.0;
 
-  public static final Lock odometryLock = new ReentrantLock();
   private final GyroIO gyroIO;
   private final GyroIOInputsAutoLogged gyroInputs = new GyroIOInputsAutoLogged();
   private final Module[] modules = new Module[4]; // FL, FR, BL, BR
 
   private SwerveDriveKinematics kinematics = new SwerveDriveKinematics(getModuleTranslations());
-  private Pose2d pose = new Pose2d();
-  private Rotation2d lastGyroRotation = new Rotation2d();
+  private final SwerveSetpointGenerator setpointGenerator =
+      new SwerveSetpointGenerator(
+          kinematics,
+          getModuleTranslations(),
+          MAX_LINEAR_SPEED,
+          MAX_WHEEL_ACCEL,
+          MAX_STEER_VELOCITY,
+          MAX_CHASSIS_JERK);
+  private final OdometryIntegrator odometryIntegrator =
+      new OdometryIntegrator(getModuleTranslations());
+  // Poses as x, y and theta, integrated for every sample without allocating
+  private final double[] odometryState = new double[3];
+  private final double[] estimateState = new double[3]; // Odometry corrected with vision
+  private Pose2d odometryPose = new Pose2d(); // Copies of the states, updated once per cycle
+  private Pose2d estimatedPose = new Pose2d();
+  private final double[] wheelDeltasMeters = new double[4];
+  private final double[] wheelAnglesRad = new double[4];
+  // Volatile since the fast loop reads it as well
+  private volatile DriveState state =
+      new DriveState(
+          0.0,
+          new Pose2d(),
+          new ChassisSpeeds(),
+          new SwerveModuleState[] {
+            new SwerveModuleState(),
+            new SwerveModuleState(),
+            new SwerveModuleState(),
+            new SwerveModuleState()
+          },
+          new Rotation2d(),
+          0.0);
+  private boolean poseEstimatorEnabled = true;
+  private final double[] historyPose = new double[3];
+  private final double[] visionGains = new double[3]; // Of the last measurement, x, y and theta
+  private double odometryTimestamp = 0.0;
+  private final PoseHistory poseHistory =
+      new PoseHistory((int) (POSE_HISTORY_SECONDS * Module.ODOMETRY_FREQUENCY));
+  private final double[] lastModulePositionsMeters = new double[4];
+
+  // Gyro samples for odometry, see updateGyroSamples()
+  private final double[] gyroSampleTimestamps =
+      new double[PhoenixOdometryThread.BUFFER_CAPACITY + 1];
+  private final double[] gyroSampleYawsRad = new double[PhoenixOdometryThread.BUFFER_CAPACITY + 1];
+  private int gyroSampleCount = 0;
+  private double lastRawGyroYawRad = 0.0;
+  private double unwrappedGyroYawRad = 0.0;
+  private double lastGyroYawRad = 0.0;
 
   // Field oriented direction in degrees
   private PIDController fieldOrientedDirectionController = new PIDController(0.05, 0.0, 0.0);
 
+  /**
+   * Command from the command loop to the fast loop. Speeds are field relative with a heading
+   * setpoint in degrees when holding a heading, otherwise robot relative.
+   */
+  private record FastLoopCommand(
+      double vx, double vy, double omega, boolean holdHeading, double headingDegrees) {}
+
+  // Fast loop, the command loop only writes the command and the fast loop only reads it. The lock
+  // is held for every fast loop cycle, so taking it hands the modules over between the threads.
+  private final AtomicReference<FastLoopCommand> fastLoopCommand = new AtomicReference<>();
+  private final Object fastLoopLock = new Object();
+  private final SwerveSetpointGenerator fastSetpointGenerator =
+      new SwerveSetpointGenerator(
+          new SwerveDriveKinematics(getModuleTranslations()),
+          getModuleTranslations(),
+          MAX_LINEAR_SPEED,
+          MAX_WHEEL_ACCEL,
+          MAX_STEER_VELOCITY,
+          MAX_CHASSIS_JERK);
+  private final PIDController fastHeadingController = new PIDController(0.05, 0.0, 0.0);
+  private SwerveModuleState[] fastSetpointStates; // Guarded by fastLoopLock
+  private boolean fastLoopThreadConfigured = false; // Fast loop thread only
+  private final AtomicLong fastLoopCycleCount = new AtomicLong();
+  private final AtomicLong fastLoopMaxMicros = new AtomicLong();
+
   public Drive(
       GyroIO gyroIO,
       ModuleIO flModuleIO,
@@ -67,12 +151,18 @@ public class Drive extends SubsystemBase {
     modules[3] = new Module(brModuleIO, 3);
 
     fieldOrientedDirectionController.enableContinuousInput(0, 360.0);
+    fastHeadingController.enableContinuousInput(0, 360.0);
+    if (FAST_LOOP_ENABLED) {
+      Notifier fastLoopNotifier = new Notifier(this::runFastLoop);
+      fastLoopNotifier.setName("DriveFastLoop");
+      fastLoopNotifier.startPeriodic(FAST_LOOP_PERIOD);
+    }
 
     // Configure AutoBuilder for PathPlanner
     AutoBuilder.configureHolonomic(
         this::getPose,
         this::setPose,
-        () -> kinematics.toChassisSpeeds(getModuleStates()),
+        () -> getState().robotRelativeSpeeds(),
         this::runVelocity,
         new HolonomicPathFollowerConfig(
             MAX_LINEAR_SPEED, DRIVE_BASE_RADIUS, new ReplanningConfig()),
@@ -92,13 +182,21 @@ public class Drive extends SubsystemBase {
     //     });
   }
 
-  public void periodic() {
-    // odometryLock.lock(); // Prevents odometry updates while reading data
+  @Override
+  protected void subsystemPeriodic() {
+    // Every odometry buffer is drained up to the same sample, without blocking the thread
+    PhoenixOdometryThread.getInstance().takeSnapshot();
+    // Every module's signals are refreshed in one call
+    DriveSignalGroup.getInstance().refresh();
     gyroIO.updateInputs(gyroInputs);
     for (var module : modules) {
       module.updateInputs();
     }
-    // odometryLock.unlock();
+    PhoenixOdometryThread.getInstance().logMetrics();
+    if (FAST_LOOP_ENABLED) {
+      Logger.recordOutput("Drive/FastLoop/Cycles", fastLoopCycleCount.getAndSet(0));
+      Logger.recordOutput("Drive/FastLoop/MaxMs", fastLoopMaxMicros.getAndSet(0) / 1000.0);
+    }
     // Logger.processInputs("Drive/Gyro", gyroInputs);
     for (var module : modules) {
       module.periodic();
@@ -106,11 +204,13 @@ public class Drive extends SubsystemBase {
 
     // Stop moving when disabled
     if (DriverStation.isDisabled()) {
+      releaseFastLoop();
       for (var module : modules) {
         module.stop();
       }
 
       setTargetDirection(getRotation().getDegrees());
+      setpointGenerator.reset();
     }
     // Log empty setpoint states when disabled
     // if (DriverStation.isDisabled()) {
@@ -119,36 +219,108 @@ public class Drive extends SubsystemBase {
     // SwerveModuleState[] {});
     // }
 
-    // Update odometry
-    int deltaCount = Integer.MAX_VALUE;
-    // gyroInputs.connected ? gyroInputs.odometryYawPositions.length :
-    // Integer.MAX_VALUE;
-    for (int i = 0; i < 4; i++) {
-      deltaCount = Math.min(deltaCount, modules[i].getPositionDeltas().length);
+    // Update odometry, the module signals are sampled in the same cycles by the odometry thread.
+    // The gyro updates at its own rate and is interpolated at the module sample times.
+    int sampleCount = Integer.MAX_VALUE;
+    for (var module : modules) {
+      sampleCount = Math.min(sampleCount, module.getOdometrySampleCount());
+    }
+    if (gyroInputs.connected) {
+      updateGyroSamples();
     }
-    for (int deltaIndex = 0; deltaIndex < deltaCount; deltaIndex++) {
+    for (int sampleIndex = 0; sampleIndex < sampleCount; sampleIndex++) {
+      // Each device captured this sample at a slightly different time, so every reading is
+      // interpolated to the average capture time of the drive positions
+      double timestamp = 0.0;
+      for (var module : modules) {
+        timestamp += module.getOdometryTimestamp(sampleIndex);
+      }
+      timestamp /= modules.length;
+
       // Read wheel deltas from each module
-      SwerveModulePosition[] wheelDeltas = new SwerveModulePosition[4];
       for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
-        wheelDeltas[moduleIndex] = modules[moduleIndex].getPositionDeltas()[deltaIndex];
+        double positionMeters = modules[moduleIndex].getOdometryPositionMetersAt(timestamp);
+        wheelDeltasMeters[moduleIndex] = positionMeters - lastModulePositionsMeters[moduleIndex];
+        wheelAnglesRad[moduleIndex] = modules[moduleIndex].getOdometryAngleRadAt(timestamp);
+        lastModulePositionsMeters[moduleIndex] = positionMeters;
       }
 
       // The twist represents the motion of the robot since the last
       // sample in x, y, and theta based only on the modules, without
       // the gyro. The gyro is always disconnected in simulation.
-      var twist = kinematics.toTwist2d(wheelDeltas);
+      odometryIntegrator.updateTwist(wheelDeltasMeters, wheelAnglesRad);
+      double dtheta = odometryIntegrator.getTwistDtheta();
       if (gyroInputs.connected) {
         // If the gyro is connected, replace the theta component of the twist
         // with the change in angle since the last sample.
-        Rotation2d gyroRotation = gyroInputs.yawPosition;
-        twist =
-            new Twist2d(
-                twist.dx, twist.dy, gyroRotation.minus(lastGyroRotation).getRadians() / deltaCount);
+        double gyroYawRad =
+            Module.interpolateSamples(
+                gyroSampleTimestamps, gyroSampleYawsRad, gyroSampleCount, timestamp);
+        dtheta = gyroYawRad - lastGyroYawRad;
+        lastGyroYawRad = gyroYawRad;
       }
       // Apply the twist (change since last sample) to the current pose
-      pose = pose.exp(twist);
+      double dx = odometryIntegrator.getTwistDx();
+      double dy = odometryIntegrator.getTwistDy();
+      OdometryIntegrator.exp(odometryState, dx, dy, dtheta);
+      OdometryIntegrator.exp(estimateState, dx, dy, dtheta);
+      odometryTimestamp = timestamp;
+      poseHistory.addSample(timestamp, odometryState[0], odometryState[1], odometryState[2]);
+    }
+    if (sampleCount > 0) {
+      odometryPose = toPose(odometryState);
+      estimatedPose = toPose(estimateState);
+    }
+
+    // Publish this cycle's snapshot
+    SwerveModuleState[] moduleStates = new SwerveModuleState[4];
+    for (int i = 0; i < 4; i++) {
+      moduleStates[i] = modules[i].getState();
+    }
+    state =
+        new DriveState(
+            odometryTimestamp,
+            estimatedPose,
+            kinematics.toChassisSpeeds(moduleStates),
+            moduleStates,
+            gyroInputs.yawPosition,
+            gyroInputs.yawVelocityRadPerSec);
+  }
+
+  private static Pose2d toPose(double[] state) {
+    return new Pose2d(state[0], state[1], new Rotation2d(state[2]));
+  }
+
+  private static void setState(double[] state, Pose2d pose) {
+    state[0] = pose.getX();
+    state[1] = pose.getY();
+    state[2] = pose.getRotation().getRadians();
+  }
+
+  /**
+   * Stores this cycle's gyro samples for interpolation, unwrapped so the yaw is continuous and
+   * preceded by the last sample of the previous cycle.
+   */
+  private void updateGyroSamples() {
+    int newSampleCount = gyroInputs.odometryYawPositionsRad.length;
+    if (newSampleCount == 0) {
+      return;
+    }
+    int carried = 0;
+    if (gyroSampleCount > 0) {
+      gyroSampleTimestamps[0] = gyroSampleTimestamps[gyroSampleCount - 1];
+      gyroSampleYawsRad[0] = gyroSampleYawsRad[gyroSampleCount - 1];
+      carried = 1;
     }
-    lastGyroRotation = gyroInputs.yawPosition;
+    newSampleCount = Math.min(newSampleCount, gyroSampleTimestamps.length - carried);
+    for (int i = 0; i < newSampleCount; i++) {
+      double rawYawRad = gyroInputs.odometryYawPositionsRad[i];
+      unwrappedGyroYawRad += MathUtil.angleModulus(rawYawRad - lastRawGyroYawRad);
+      lastRawGyroYawRad = rawYawRad;
+      gyroSampleTimestamps[carried + i] = gyroInputs.odometryYawTimestamps[i];
+      gyroSampleYawsRad[carried + i] = unwrappedGyroYawRad;
+    }
+    gyroSampleCount = carried + newSampleCount;
   }
 
   public void resetRotation(double resetDirection) {
@@ -164,10 +336,24 @@ public class Drive extends SubsystemBase {
    * @param speeds Speeds in meters/sec
    */
   public void runVelocity(ChassisSpeeds speeds) {
-    // Calculate module setpoints
+    if (FAST_LOOP_ENABLED) {
+      submitFastLoopCommand(
+          new FastLoopCommand(
+              speeds.vxMetersPerSecond,
+              speeds.vyMetersPerSecond,
+              speeds.omegaRadiansPerSecond,
+              false,
+              0.0));
+      return;
+    }
+    runModuleSetpoints(speeds);
+  }
+
+  private void runModuleSetpoints(ChassisSpeeds speeds) {
+    // Calculate module setpoints, limited to what the modules can follow from their measured states
     ChassisSpeeds discreteSpeeds = ChassisSpeeds.discretize(speeds, 0.02);
-    SwerveModuleState[] setpointStates = kinematics.toSwerveModuleStates(discreteSpeeds);
-    SwerveDriveKinematics.desaturateWheelSpeeds(setpointStates, MAX_LINEAR_SPEED);
+    SwerveModuleState[] setpointStates =
+        setpointGenerator.generate(discreteSpeeds, getModuleStates(), 0.02);
 
     // Logger.recordOutput("Drive/Speeds", speeds);
 
@@ -185,6 +371,17 @@ public class Drive extends SubsystemBase {
   }
 
   public void runFieldOrientedDirection(Translation2d translation) {
+    if (FAST_LOOP_ENABLED) {
+      // The heading controller runs in the fast loop against the newest gyro sample
+      submitFastLoopCommand(
+          new FastLoopCommand(
+              translation.getX(),
+              translation.getY(),
+              0.0,
+              true,
+              fieldOrientedDirectionController.getSetpoint()));
+      return;
+    }
     double currentDegrees = getRotation().getDegrees();
     double omegaOutput = fieldOrientedDirectionController.calculate(currentDegrees);
 
@@ -204,6 +401,7 @@ public class Drive extends SubsystemBase {
    */
   public void runFrontWheelDrive(
       double speedMetersPerSec, double steering, boolean brake, double maxTurningAngle) {
+    releaseFastLoop();
     // Calculate module setpoints
     SwerveModuleState frontWheels =
         new SwerveModuleState(
@@ -243,10 +441,9 @@ public class Drive extends SubsystemBase {
     runVelocity(new ChassisSpeeds());
   }
 
-  /** Gets drive speed. */
-  public ChassisSpeeds getChassisSpeed() {
-    return kinematics.toChassisSpeeds(
-        modules[0].getState(), modules[1].getState(), modules[2].getState(), modules[3].getState());
+  /** Returns the drive snapshot published by the last {@link #periodic()}. */
+  public DriveState getState() {
+    return state;
   }
 
   /**
@@ -259,16 +456,90 @@ public class Drive extends SubsystemBase {
       headings[i] = getModuleTranslations()[i].getAngle();
     }
     kinematics.resetHeadings(headings);
-    stop();
+    releaseFastLoop();
+    // The setpoint generator would ramp down from the measured speed and steer the modules along
+    // that motion, so the X is commanded directly
+    setpointGenerator.reset();
+    for (int i = 0; i < 4; i++) {
+      modules[i].runSetpoint(new SwerveModuleState(0.0, headings[i]));
+    }
   }
 
   /** Runs forwards at the commanded voltage. */
   public void runCharacterizationVolts(double volts) {
+    releaseFastLoop();
     for (int i = 0; i < 4; i++) {
       modules[i].runCharacterization(volts);
     }
   }
 
+  /** Sends a command to the fast loop, taking the modules over from the command loop if needed. */
+  private void submitFastLoopCommand(FastLoopCommand command) {
+    if (fastLoopCommand.get() != null) {
+      fastLoopCommand.set(command);
+      return;
+    }
+    synchronized (fastLoopLock) {
+      // Start from the measured states, the fast loop then builds on its own setpoints
+      fastSetpointStates = getModuleStates();
+      fastSetpointGenerator.reset();
+      fastHeadingController.reset();
+      for (var module : modules) {
+        module.clearSetpoint();
+      }
+      fastLoopCommand.set(command);
+    }
+  }
+
+  /** Hands the modules back to the command loop, waiting for a running fast loop cycle. */
+  private void releaseFastLoop() {
+    if (fastLoopCommand.get() == null) {
+      return;
+    }
+    synchronized (fastLoopLock) {
+      fastLoopCommand.set(null);
+    }
+  }
+
+  /** Runs one cycle of the fast loop on the notifier thread. */
+  private void runFastLoop() {
+    if (!fastLoopThreadConfigured) {
+      ThreadPriorityManager.getInstance().configureCurrentThread("DriveFastLoop");
+      fastLoopThreadConfigured = true;
+    }
+    long start = RobotController.getFPGATime();
+    synchronized (fastLoopLock) {
+      FastLoopCommand command = fastLoopCommand.get();
+      if (command == null) {
+        return;
+      }
+
+      ChassisSpeeds speeds;
+      if (command.holdHeading()) {
+        // Newest gyro sample rather than the one from the last command loop cycle
+        Rotation2d rotation = state.rotation();
+        double latestYawRad = gyroIO.getLatestYawRadians();
+        if (!Double.isNaN(latestYawRad)) {
+          rotation = new Rotation2d(latestYawRad).minus(gyroInputs.yawOffset);
+        }
+        fastHeadingController.setSetpoint(command.headingDegrees());
+        double omega = fastHeadingController.calculate(rotation.getDegrees());
+        speeds = ChassisSpeeds.fromFieldRelativeSpeeds(command.vx(), command.vy(), omega, rotation);
+      } else {
+        speeds = new ChassisSpeeds(command.vx(), command.vy(), command.omega());
+      }
+
+      ChassisSpeeds discreteSpeeds = ChassisSpeeds.discretize(speeds, FAST_LOOP_PERIOD);
+      fastSetpointStates =
+          fastSetpointGenerator.generate(discreteSpeeds, fastSetpointStates, FAST_LOOP_PERIOD);
+      for (int i = 0; i < 4; i++) {
+        modules[i].runFastSetpoint(fastSetpointStates[i]);
+      }
+    }
+    fastLoopCycleCount.incrementAndGet();
+    fastLoopMaxMicros.accumulateAndGet(RobotController.getFPGATime() - start, Math::max);
+  }
+
   public void setTargetDirection(double degrees) {
     fieldOrientedDirectionController.setSetpoint(degrees);
   }
@@ -285,17 +556,128 @@ public class Drive extends SubsystemBase {
   /** Returns the module states (turn angles and drive velocities) for all of the modules. */
   // @AutoLogOutput(key = "SwerveStates/Measured")
   private SwerveModuleState[] getModuleStates() {
-    SwerveModuleState[] states = new SwerveModuleState[4];
-    for (int i = 0; i < 4; i++) {
-      states[i] = modules[i].getState();
-    }
-    return states;
+    return state.moduleStates();
   }
 
-  /** Returns the current odometry pose. */
+  /**
+   * Returns the pose estimate of this cycle's snapshot, the same as {@code getState().pose()}.
+   * Vision measurements applied later in the cycle show up in the next snapshot.
+   */
   // @AutoLogOutput(key = "Odometry/Robot")
   public Pose2d getPose() {
-    return pose;
+    return state.pose();
+  }
+
+  /** Returns the current pose from odometry alone. */
+  // @AutoLogOutput(key = "Odometry/Odometry")
+  public Pose2d getOdometryPose() {
+    return odometryPose;
+  }
+
+  /** Returns the FPGA timestamp in seconds of the last odometry sample applied to the pose. */
+  public double getOdometryTimestamp() {
+    return odometryTimestamp;
+  }
+
+  /**
+   * Returns the interpolated pose estimate at a past timestamp, e.g. when a camera frame was
+   * captured. Timestamps after the last sample return the current pose.
+   *
+   * @param timestamp FPGA timestamp in seconds
+   * @return The pose, or empty if the timestamp is older than the pose history
+   */
+  public Optional<Pose2d> getPoseAt(double timestamp) {
+    double[] pose = new double[3];
+    if (!getPoseAt(timestamp, pose)) {
+      return Optional.empty();
+    }
+    return Optional.of(new Pose2d(pose[0], pose[1], new Rotation2d(pose[2])));
+  }
+
+  /**
+   * Writes the interpolated pose estimate at a past timestamp into the caller's array without
+   * allocating.
+   *
+   * @param timestamp FPGA timestamp in seconds
+   * @param poseOut Array of at least three elements, filled with x and y in meters and theta in
+   *     radians
+   * @return False if the timestamp is older than the pose history
+   */
+  public boolean getPoseAt(double timestamp, double[] poseOut) {
+    if (!poseHistory.getPoseAt(timestamp, poseOut)) {
+      return false;
+    }
+    // The history holds odometry poses, apply the odometry's motion since then to the estimate
+    double cos = Math.cos(odometryState[2]);
+    double sin = Math.sin(odometryState[2]);
+    double dx = poseOut[0] - odometryState[0];
+    double dy = poseOut[1] - odometryState[1];
+    double relativeX = dx * cos + dy * sin;
+    double relativeY = -dx * sin + dy * cos;
+    double relativeTheta = poseOut[2] - odometryState[2];
+
+    cos = Math.cos(estimateState[2]);
+    sin = Math.sin(estimateState[2]);
+    poseOut[0] = estimateState[0] + relativeX * cos - relativeY * sin;
+    poseOut[1] = estimateState[1] + relativeX * sin + relativeY * cos;
+    poseOut[2] = MathUtil.angleModulus(estimateState[2] + relativeTheta);
+    return true;
+  }
+
+  /**
+   * Corrects the pose estimate with a vision measurement. The measurement is compared against the
+   * estimate at the time the frame was captured, then the odometry since then is applied on top of
+   * the correction. Measurements older than the pose history are ignored.
+   *
+   * @param visionPose Field pose measured by the camera
+   * @param timestamp FPGA timestamp in seconds when the frame was captured
+   * @param xyStdDev Standard deviation of the measured x and y in meters
+   * @param thetaStdDev Standard deviation of the measured rotation in radians
+   */
+  public void addVisionMeasurement(
+      Pose2d visionPose, double timestamp, double xyStdDev, double thetaStdDev) {
+    if (!poseEstimatorEnabled || !poseHistory.getPoseAt(timestamp, historyPose)) {
+      return;
+    }
+    var sample = new Pose2d(historyPose[0], historyPose[1], new Rotation2d(historyPose[2]));
+    var estimateAtTime = estimatedPose.plus(new Transform2d(odometryPose, sample));
+
+    // Kalman gain for each axis, from the odometry and measurement variances
+    double[] odometryStdDevs = PoseEstimatorConstants.ODOMETRY_STD_DEVS;
+    visionGains[0] = getKalmanGain(odometryStdDevs[0], xyStdDev);
+    visionGains[1] = getKalmanGain(odometryStdDevs[1], xyStdDev);
+    visionGains[2] = getKalmanGain(odometryStdDevs[2], thetaStdDev);
+    Logger.recordOutput("Drive/VisionGains", visionGains);
+    var error = new Transform2d(estimateAtTime, visionPose);
+    var correction =
+        new Transform2d(
+            error.getX() * visionGains[0],
+            error.getY() * visionGains[1],
+            new Rotation2d(error.getRotation().getRadians() * visionGains[2]));
+    estimatedPose = estimateAtTime.plus(correction).plus(new Transform2d(sample, odometryPose));
+    setState(estimateState, estimatedPose);
+  }
+
+  private static double getKalmanGain(double odometryStdDev, double measurementStdDev) {
+    double q = odometryStdDev * odometryStdDev;
+    double r = measurementStdDev * measurementStdDev;
+    if (q == 0.0) {
+      return 0.0;
+    }
+    return q / (q + Math.sqrt(q * r));
+  }
+
+  /**
+   * Enables or disables vision corrections. While disabled the estimate follows odometry from the
+   * last correction.
+   */
+  public void setPoseEstimatorEnabled(boolean enabled) {
+    poseEstimatorEnabled = enabled;
+  }
+
+  /** Returns whether vision measurements are applied to the pose estimate. */
+  public boolean isPoseEstimatorEnabled() {
+    return poseEstimatorEnabled;
   }
 
   /** Returns the current odometry rotation. */
@@ -303,9 +685,24 @@ public class Drive extends SubsystemBase {
     return gyroInputs.yawPosition;
   }
 
-  /** Resets the current odometry pose. */
+  /** Resets the current odometry pose and pose estimate, and the pose of the snapshot. */
   public void setPose(Pose2d pose) {
-    this.pose = pose;
+    odometryPose = pose;
+    estimatedPose = pose;
+    setState(odometryState, pose);
+    setState(estimateState, pose);
+    poseHistory.clear(); // Past poses are in the old frame
+
+    // Readers after the reset see the new pose without waiting for the next cycle
+    DriveState current = state;
+    state =
+        new DriveState(
+            current.timestamp(),
+            pose,
+            current.robotRelativeSpeeds(),
+            current.moduleStates(),
+            current.rotation(),
+            current.yawVelocityRadPerSec());
   }
 
   /** Returns the maximum linear speed in meters per sec. */
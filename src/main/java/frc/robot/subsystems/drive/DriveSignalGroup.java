@@ -0,0 +1,55 @@
+package frc.robot.subsystems.drive;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import edu.wpi.first.wpilibj.RobotController;
+import java.util.Arrays;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Refreshes the status signals of every drivetrain device in a single call.
+ *
+ * <p>Each module registers its signals once at construction. Drive then calls {@link #refresh()}
+ * once per cycle, before the module inputs are updated, so the whole drivetrain costs one blocking
+ * refresh instead of one per module. Main thread only.
+ */
+public class DriveSignalGroup {
+  private BaseStatusSignal[] signals = new BaseStatusSignal[0];
+  private int groupCount = 0;
+
+  private static DriveSignalGroup instance = null;
+
+  public static DriveSignalGroup getInstance() {
+    if (instance == null) {
+      instance = new DriveSignalGroup();
+    }
+    return instance;
+  }
+
+  private DriveSignalGroup() {}
+
+  /**
+   * Adds a device's signals to the group. Their values are updated by every {@link #refresh()}.
+   *
+   * @param newSignals Signals to refresh
+   */
+  public void register(BaseStatusSignal... newSignals) {
+    int oldLength = signals.length;
+    signals = Arrays.copyOf(signals, oldLength + newSignals.length);
+    System.arraycopy(newSignals, 0, signals, oldLength, newSignals.length);
+    groupCount++;
+  }
+
+  /** Refreshes every registered signal in one call. */
+  public void refresh() {
+    if (signals.length == 0) {
+      return;
+    }
+    long start = RobotController.getFPGATime();
+    BaseStatusSignal.refreshAll(signals);
+    long refreshMicros = RobotController.getFPGATime() - start;
+
+    Logger.recordOutput("Drive/SignalGroup/RefreshMs", refreshMicros / 1000.0);
+    Logger.recordOutput("Drive/SignalGroup/SignalCount", signals.length);
+    Logger.recordOutput("Drive/SignalGroup/RefreshCallsSaved", groupCount - 1);
+  }
+}
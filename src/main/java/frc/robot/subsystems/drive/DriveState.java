@@ -0,0 +1,28 @@
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+/**
+ * Snapshot of the drive, published once per cycle by {@link Drive#periodic()}. Every reader sees
+ * the same values for the rest of the cycle, and each quantity is only computed once. Only {@link
+ * Drive#setPose} replaces it within a cycle, with the new pose.
+ *
+ * <p>The module states are shared by every reader and must not be modified.
+ *
+ * @param timestamp FPGA timestamp in seconds of the last odometry sample in the pose
+ * @param pose Pose estimate at the end of odometry, before this cycle's vision measurements
+ * @param robotRelativeSpeeds Measured robot relative speeds
+ * @param moduleStates Measured module states, FL, FR, BL, BR
+ * @param rotation Gyro rotation
+ * @param yawVelocityRadPerSec Gyro yaw rate in radians per second
+ */
+public record DriveState(
+    double timestamp,
+    Pose2d pose,
+    ChassisSpeeds robotRelativeSpeeds,
+    SwerveModuleState[] moduleStates,
+    Rotation2d rotation,
+    double yawVelocityRadPerSec) {}
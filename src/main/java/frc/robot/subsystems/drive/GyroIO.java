@@ -24,10 +24,21 @@ public interface GyroIO {
     public Rotation2d realYawPosition = new Rotation2d();
     public Rotation2d yawPosition = new Rotation2d();
     public Rotation2d yawOffset = new Rotation2d();
-    public Rotation2d[] odometryYawPositions = new Rotation2d[] {};
+    // Samples received since the last update, the arrays are reused while their count is unchanged
+    public double[] odometryYawTimestamps = new double[] {};
+    public double[] odometryYawPositionsRad = new double[] {};
     public Rotation3d pose;
     public double yawVelocityRadPerSec = 0.0;
   }
 
   public default void updateInputs(GyroIOInputs inputs) {}
+
+  /**
+   * Returns the newest real yaw sample in radians, before the yaw offset, without waiting for the
+   * next input update, or NaN if unavailable. Used by the fast control loop, safe to call from any
+   * thread.
+   */
+  public default double getLatestYawRadians() {
+    return Double.NaN;
+  }
 }
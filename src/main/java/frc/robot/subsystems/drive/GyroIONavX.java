@@ -17,14 +17,69 @@ import com.kauailabs.navx.frc.AHRS;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.SerialPort;
+import frc.lib.SampleRingBuffer;
 
-/** IO implementation for NavX */
+/**
+ * IO implementation for NavX
+ *
+ * <p>The NavX updates at its own rate, slower than the odometry thread polls it, so the yaw is
+ * registered as a {@link PhoenixOdometryThread.CapturedSignal}: only new sensor readings become
+ * samples, stamped with the NavX's capture time converted to FPGA time.
+ */
 public class GyroIONavX implements GyroIO {
-  public final AHRS gyro = new AHRS(SerialPort.Port.kMXP);
+  // The default of 50 Hz would leave four of five odometry samples without a new yaw
+  private static final byte UPDATE_RATE_HZ = (byte) 200;
+  // Lets the clock offset rise by up to 200 ppm of drift between the NavX and the FPGA clocks
+  private static final long OFFSET_DRIFT_MICROS_PER_SAMPLE = 1;
+
+  public final AHRS gyro =
+      new AHRS(SerialPort.Port.kMXP, AHRS.SerialDataType.kProcessedData, UPDATE_RATE_HZ);
   public static final boolean INVERTED = true;
 
+  private final SampleRingBuffer yawPositionBuffer;
+  private final double[] yawPositionSamples = new double[PhoenixOdometryThread.BUFFER_CAPACITY];
+  private final long[] yawTimestampSamples = new long[PhoenixOdometryThread.BUFFER_CAPACITY];
+
   public GyroIONavX() {
     gyro.reset();
+    yawPositionBuffer = PhoenixOdometryThread.getInstance().registerSignal(new YawSignal());
+  }
+
+  /** Yaw in degrees, stamped with the time the NavX measured it. Odometry thread only. */
+  private class YawSignal implements PhoenixOdometryThread.CapturedSignal {
+    private long lastSensorTimestamp = -1; // Milliseconds on the NavX clock
+    private long offsetMicros = 0; // FPGA time minus NavX time
+    private double yawDegrees = 0.0;
+
+    @Override
+    public long read(long fpgaTimestamp) {
+      long sensorTimestamp = gyro.getLastSensorTimestamp();
+      if (sensorTimestamp == lastSensorTimestamp) {
+        return -1;
+      }
+      double yaw = gyro.getYaw();
+      if (gyro.getLastSensorTimestamp() != sensorTimestamp) {
+        return -1; // Updated while reading, the new value is picked up next cycle
+      }
+
+      // Every reading arrives some time after it was measured, so the smallest offset seen is the
+      // one with the least delay. The NavX clock restarts with the NavX, which resets the offset.
+      long sensorMicros = sensorTimestamp * 1000;
+      long offsetCandidate = fpgaTimestamp - sensorMicros;
+      if (lastSensorTimestamp < 0 || sensorTimestamp < lastSensorTimestamp) {
+        offsetMicros = offsetCandidate;
+      } else {
+        offsetMicros = Math.min(offsetCandidate, offsetMicros + OFFSET_DRIFT_MICROS_PER_SAMPLE);
+      }
+      lastSensorTimestamp = sensorTimestamp;
+      yawDegrees = yaw * (INVERTED ? -1.0 : 1.0);
+      return sensorMicros + offsetMicros;
+    }
+
+    @Override
+    public double getValue() {
+      return yawDegrees;
+    }
   }
 
   public void ResetYaw() {
@@ -38,5 +93,24 @@ public class GyroIONavX implements GyroIO {
     inputs.yawPosition = inputs.realYawPosition.minus(inputs.yawOffset);
     inputs.yawVelocityRadPerSec = Units.degreesToRadians(gyro.getRate());
     inputs.pose = gyro.getRotation3d();
+
+    int sampleCount =
+        yawPositionBuffer.drain(
+            yawPositionSamples,
+            yawTimestampSamples,
+            PhoenixOdometryThread.getInstance().getSnapshotSequence());
+    if (inputs.odometryYawTimestamps.length != sampleCount) {
+      inputs.odometryYawTimestamps = new double[sampleCount];
+      inputs.odometryYawPositionsRad = new double[sampleCount];
+    }
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryYawTimestamps[i] = yawTimestampSamples[i] / 1e6;
+      inputs.odometryYawPositionsRad[i] = Units.degreesToRadians(yawPositionSamples[i]);
+    }
+  }
+
+  @Override
+  public double getLatestYawRadians() {
+    return Units.degreesToRadians(yawPositionBuffer.peekLatest());
   }
 }
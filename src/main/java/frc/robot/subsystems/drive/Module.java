@@ -30,8 +30,15 @@ public class Module {
   private Rotation2d angleSetpoint = null; // Setpoint for closed loop control, null for open loop
   /* Velocity in meters per second */
   private Double speedSetpoint = null;
-  private double lastPositionMeters = 0.0; // Used for delta calculation
-  private SwerveModulePosition[] positionDeltas = new SwerveModulePosition[] {};
+
+  // Odometry samples received this cycle, preceded by the last sample of the previous cycle so
+  // every sample can be interpolated against its neighbor
+  private static final int MAX_SAMPLES = PhoenixOdometryThread.BUFFER_CAPACITY + 1;
+  private final double[] driveSampleTimestamps = new double[MAX_SAMPLES];
+  private final double[] driveSamplePositionsMeters = new double[MAX_SAMPLES];
+  private final double[] turnSampleTimestamps = new double[MAX_SAMPLES];
+  private final double[] turnSampleAnglesRad = new double[MAX_SAMPLES];
+  private int storedSampleCount = 0; // Including the sample carried over from the last cycle
 
   public Module(ModuleIO io, int index) {
     this.io = io;
@@ -42,7 +49,7 @@ public class Module {
 
   /**
    * Update inputs without running the rest of the periodic logic. This is useful since these
-   * updates need to be properly thread-locked.
+   * updates need to happen together, right after the odometry snapshot is taken.
    */
   public void updateInputs() {
     io.updateInputs(inputs);
@@ -64,32 +71,34 @@ public class Module {
       // Run closed loop drive control
       // Only allowed if closed loop turn control is running
       if (speedSetpoint != null) {
-        // Scale velocity based on turn error
-        //
-        // When the error is 90°, the velocity setpoint should be 0. As the wheel turns
-        // towards the setpoint, its velocity should increase. This is achieved by
-        // taking the component of the velocity in the direction of the setpoint.
-        double angleError =
-            Math.abs(rotationalDifferenceBetween(inputs.turnPosition, angleSetpoint));
-        double adjustSpeedSetpoint = speedSetpoint * Math.cos(Units.degreesToRadians(angleError));
-
-        // Run drive controller, convert meters per second to rotations per second
-        double velocityRotationsPerSec = adjustSpeedSetpoint / WHEEL_CIRCUMFERENCE;
-
-        io.setDriveVelocityRPS(velocityRotationsPerSec);
+        runDriveVelocity(speedSetpoint, inputs.turnPosition, angleSetpoint);
       }
     }
 
-    // Calculate position deltas for odometry
-    positionDeltas = new SwerveModulePosition[1];
-    for (int i = 0; i < 1; i++) {
-      double positionMeters = inputs.drivePositionRotations * WHEEL_CIRCUMFERENCE;
-      // Rotation2d angle =
-      //     inputs.turnPosition.plus(
-      //         turnRelativeOffset != null ? turnRelativeOffset : new Rotation2d());
-      Rotation2d angle = inputs.turnPosition;
-      positionDeltas[i] = new SwerveModulePosition(positionMeters - lastPositionMeters, angle);
-      lastPositionMeters = positionMeters;
+    // Store the odometry samples, keeping the newest one from the previous cycle
+    int newSampleCount = inputs.odometryDriveTimestamps.length;
+    if (newSampleCount > 0) {
+      int carried = 0;
+      if (storedSampleCount > 0) {
+        int last = storedSampleCount - 1;
+        driveSampleTimestamps[0] = driveSampleTimestamps[last];
+        driveSamplePositionsMeters[0] = driveSamplePositionsMeters[last];
+        turnSampleTimestamps[0] = turnSampleTimestamps[last];
+        turnSampleAnglesRad[0] = turnSampleAnglesRad[last];
+        carried = 1;
+      }
+      newSampleCount = Math.min(newSampleCount, MAX_SAMPLES - carried);
+      for (int i = 0; i < newSampleCount; i++) {
+        driveSampleTimestamps[carried + i] = inputs.odometryDriveTimestamps[i];
+        driveSamplePositionsMeters[carried + i] =
+            inputs.odometryDrivePositionsRotations[i] * WHEEL_CIRCUMFERENCE;
+        // Rotation2d angle =
+        //     inputs.turnPosition.plus(
+        //         turnRelativeOffset != null ? turnRelativeOffset : new Rotation2d());
+        turnSampleTimestamps[carried + i] = inputs.odometryTurnTimestamps[i];
+        turnSampleAnglesRad[carried + i] = inputs.odometryTurnPositionsRad[i];
+      }
+      storedSampleCount = carried + newSampleCount;
     }
   }
 
@@ -106,6 +115,44 @@ public class Module {
     return optimizedState;
   }
 
+  /**
+   * Runs the module closed loop from the fast control loop thread, against the newest turn angle
+   * sample. Unlike {@link #runSetpoint}, the setpoint is not stored for {@link #periodic()}, since
+   * the fast loop sends a new one every cycle.
+   */
+  void runFastSetpoint(SwerveModuleState state) {
+    double latestRotations = io.getLatestTurnPositionRotations();
+    Rotation2d currentAngle =
+        Double.isNaN(latestRotations)
+            ? inputs.turnPosition
+            : Rotation2d.fromRotations(latestRotations);
+    var optimizedState = SwerveModuleState.optimize(state, currentAngle);
+    io.setTurnPosition(optimizedState.angle);
+    runDriveVelocity(optimizedState.speedMetersPerSecond, currentAngle, optimizedState.angle);
+  }
+
+  /** Stops closed loop control in {@link #periodic()} without commanding the motors. */
+  void clearSetpoint() {
+    angleSetpoint = null;
+    speedSetpoint = null;
+  }
+
+  private void runDriveVelocity(
+      double speedMetersPerSec, Rotation2d currentAngle, Rotation2d targetAngle) {
+    // Scale velocity based on turn error
+    //
+    // When the error is 90°, the velocity setpoint should be 0. As the wheel turns
+    // towards the setpoint, its velocity should increase. This is achieved by
+    // taking the component of the velocity in the direction of the setpoint.
+    double angleError = Math.abs(rotationalDifferenceBetween(currentAngle, targetAngle));
+    double adjustSpeedSetpoint = speedMetersPerSec * Math.cos(Units.degreesToRadians(angleError));
+
+    // Run drive controller, convert meters per second to rotations per second
+    double velocityRotationsPerSec = adjustSpeedSetpoint / WHEEL_CIRCUMFERENCE;
+
+    io.setDriveVelocityRPS(velocityRotationsPerSec);
+  }
+
   /** Runs the module with the specified voltage while controlling to zero degrees. */
   public void runCharacterization(double volts) {
     // Closed loop turn control
@@ -166,9 +213,57 @@ public class Module {
     return new SwerveModuleState(getVelocityMetersPerSec(), getAngle());
   }
 
-  /** Returns the module position deltas received this cycle. */
-  public SwerveModulePosition[] getPositionDeltas() {
-    return positionDeltas;
+  /** Returns the number of odometry samples received this cycle. */
+  public int getOdometrySampleCount() {
+    return inputs.odometryDriveTimestamps.length;
+  }
+
+  /** Returns the FPGA timestamp in seconds of a drive position sample received this cycle. */
+  public double getOdometryTimestamp(int sampleIndex) {
+    return inputs.odometryDriveTimestamps[sampleIndex];
+  }
+
+  /**
+   * Returns the drive position in meters at an FPGA timestamp, interpolated between the odometry
+   * samples received so the drive position lines up in time with the other modules and the gyro.
+   */
+  public double getOdometryPositionMetersAt(double timestamp) {
+    return interpolateSamples(
+        driveSampleTimestamps, driveSamplePositionsMeters, storedSampleCount, timestamp);
+  }
+
+  /**
+   * Returns the continuous turn angle in radians at an FPGA timestamp, interpolated the same way as
+   * {@link #getOdometryPositionMetersAt}.
+   */
+  public double getOdometryAngleRadAt(double timestamp) {
+    return interpolateSamples(
+        turnSampleTimestamps, turnSampleAnglesRad, storedSampleCount, timestamp);
+  }
+
+  /**
+   * Linearly interpolates a series of samples sorted by timestamp. Timestamps outside of the series
+   * hold the first or last value rather than extrapolating.
+   */
+  static double interpolateSamples(
+      double[] timestamps, double[] values, int count, double timestamp) {
+    if (count == 0) {
+      return 0.0;
+    }
+    if (timestamp <= timestamps[0]) {
+      return values[0];
+    }
+    for (int i = 1; i < count; i++) {
+      if (timestamp <= timestamps[i]) {
+        double span = timestamps[i] - timestamps[i - 1];
+        if (span <= 0.0) {
+          return values[i];
+        }
+        double t = (timestamp - timestamps[i - 1]) / span;
+        return values[i - 1] + (values[i] - values[i - 1]) * t;
+      }
+    }
+    return values[count - 1];
   }
 
   /** Returns the drive velocity in radians/sec. */
@@ -22,22 +22,36 @@ public interface ModuleIO {
     public double drivePositionRotations = 0.0;
     public double driveVelocityRotationsPerSec = 0.0;
     public double driveAppliedVolts = 0.0;
-    public double[] driveCurrentAmps = new double[] {};
+    public double[] driveCurrentAmps = new double[1];
 
     public Rotation2d turnAbsolutePosition = new Rotation2d();
     public Rotation2d turnPosition = new Rotation2d();
     public double turnPositionAngle = 0.0;
     public double turnVelocityRadPerSec = 0.0;
     public double turnAppliedVolts = 0.0;
-    public double[] turnCurrentAmps = new double[] {};
+    public double[] turnCurrentAmps = new double[1];
 
     public double canCoderRotations = 0.0;
     public double canCoderAngle = 0.0;
+
+    // Samples received since the last update, the arrays are reused while their count is unchanged
+    public double[] odometryDriveTimestamps = new double[] {};
+    public double[] odometryDrivePositionsRotations = new double[] {};
+    public double[] odometryTurnTimestamps = new double[] {};
+    public double[] odometryTurnPositionsRad = new double[] {};
   }
 
   /** Updates the set of loggable inputs. */
   public default void updateInputs(ModuleIOInputs inputs) {}
 
+  /**
+   * Returns the newest turn position sample in rotations without waiting for the next input
+   * update, or NaN if unavailable. Used by the fast control loop, safe to call from any thread.
+   */
+  public default double getLatestTurnPositionRotations() {
+    return Double.NaN;
+  }
+
   /** Run the drive motor at the specified voltage. */
   public default void setDriveVoltage(double volts) {}
 
@@ -28,7 +28,10 @@ import com.ctre.phoenix6.signals.FeedbackSensorSourceValue;
 import com.ctre.phoenix6.signals.NeutralModeValue;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
+import frc.lib.ConfigManager;
+import frc.lib.SampleRingBuffer;
 import frc.lib.constants.SDSMK4L1Constants;
+import org.littletonrobotics.junction.Logger;
 
 /**
  * Module IO implementation for Talon FX drive motor controller, Talon FX turn motor controller, and
@@ -48,14 +51,14 @@ public class ModuleIOTalonFX implements ModuleIO {
   private final CANcoder cancoder;
 
   private final StatusSignal<Double> drivePosition;
-  // private final Queue<Double> drivePositionQueue;
+  private final SampleRingBuffer drivePositionBuffer;
   private final StatusSignal<Double> driveVelocity;
   // private final StatusSignal<Double> driveAppliedVolts;
   private final StatusSignal<Double> driveCurrent;
 
   private final StatusSignal<Double> turnAbsolutePosition;
   private final StatusSignal<Double> turnPosition;
-  // private final Queue<Double> turnPositionQueue;
+  private final SampleRingBuffer turnPositionBuffer;
   private final StatusSignal<Double> turnVelocity;
   private final StatusSignal<Double> turnAppliedVolts;
   private final StatusSignal<Double> turnCurrent;
@@ -69,10 +72,20 @@ public class ModuleIOTalonFX implements ModuleIO {
   private static final String CANBUS_ID = "Canivore_Drivetrain";
 
   private final double absoluteEncoderOffset;
+  private final String driveMotorOutputKey;
+  private final String turnMotorOutputKey;
+  private final String discardedSamplesKey;
+  private long discardedSampleCount = 0; // Odometry samples without a matching drive or turn sample
 
-  private static VoltageOut voltageOutCommand = new VoltageOut(0.0);
-  private static VelocityVoltage velocityVoltageCommand = new VelocityVoltage(0.0).withSlot(0);
-  private static PositionVoltage positionVoltageCommand = new PositionVoltage(0.0).withSlot(0);
+  // Reused arrays the odometry buffers are drained into every cycle
+  private final double[] drivePositionSamples = new double[PhoenixOdometryThread.BUFFER_CAPACITY];
+  private final double[] turnPositionSamples = new double[PhoenixOdometryThread.BUFFER_CAPACITY];
+  private final long[] driveTimestampSamples = new long[PhoenixOdometryThread.BUFFER_CAPACITY];
+  private final long[] turnTimestampSamples = new long[PhoenixOdometryThread.BUFFER_CAPACITY];
+
+  private final VoltageOut voltageOutCommand = new VoltageOut(0.0);
+  private final VelocityVoltage velocityVoltageCommand = new VelocityVoltage(0.0).withSlot(0);
+  private final PositionVoltage positionVoltageCommand = new PositionVoltage(0.0).withSlot(0);
 
   public ModuleIOTalonFX(int index) {
     switch (index) {
@@ -104,6 +117,10 @@ public class ModuleIOTalonFX implements ModuleIO {
         throw new RuntimeException("Invalid module index");
     }
 
+    driveMotorOutputKey = "TalonFX" + driveTalon.getDeviceID() + "/MotorOutput";
+    turnMotorOutputKey = "TalonFX" + turnTalon.getDeviceID() + "/MotorOutput";
+    discardedSamplesKey = "Odometry/Module" + index + "/DiscardedSamples";
+
     // CANcoder config
     var canCoderConfig = new CANcoderConfiguration();
     canCoderConfig.MagnetSensor.SensorDirection = SDSMK4L1Constants.canCoderSensorDirection;
@@ -116,8 +133,8 @@ public class ModuleIOTalonFX implements ModuleIO {
     driveTalon.clearStickyFaults();
     setDriveBrakeMode(true);
     drivePosition = driveTalon.getPosition();
-    // drivePositionQueue =
-    //     PhoenixOdometryThread.getInstance().registerSignal(driveTalon, driveTalon.getPosition());
+    drivePositionBuffer =
+        PhoenixOdometryThread.getInstance().registerSignal(driveTalon, driveTalon.getPosition());
     driveVelocity = driveTalon.getVelocity();
     // driveAppliedVolts = driveTalon.getMotorVoltage();
     driveCurrent = driveTalon.getStatorCurrent();
@@ -129,16 +146,16 @@ public class ModuleIOTalonFX implements ModuleIO {
     // unnecessary because position is set by the cancoder
     turnTalon.setPosition(turnAbsolutePosition.getValueAsDouble());
     turnPosition = turnTalon.getPosition(); // motor rotations
-    // turnPositionQueue =
-    //     PhoenixOdometryThread.getInstance().registerSignal(turnTalon, turnTalon.getPosition());
+    turnPositionBuffer =
+        PhoenixOdometryThread.getInstance().registerSignal(turnTalon, turnTalon.getPosition());
     turnVelocity = turnTalon.getVelocity();
     turnAppliedVolts = turnTalon.getMotorVoltage();
     turnCurrent = turnTalon.getStatorCurrent();
 
+    BaseStatusSignal.setUpdateFrequencyForAll(
+        Module.ODOMETRY_FREQUENCY, drivePosition, turnPosition);
     BaseStatusSignal.setUpdateFrequencyForAll(
         50.0,
-        drivePosition,
-        turnPosition,
         driveVelocity,
         // driveAppliedVolts,
         driveCurrent,
@@ -148,35 +165,73 @@ public class ModuleIOTalonFX implements ModuleIO {
         turnCurrent);
     driveTalon.optimizeBusUtilization();
     turnTalon.optimizeBusUtilization();
+
+    // Refreshed together with the other modules' signals by Drive every cycle
+    DriveSignalGroup.getInstance()
+        .register(
+            drivePosition,
+            driveVelocity,
+            // driveAppliedVolts,
+            driveCurrent,
+            turnAbsolutePosition,
+            turnPosition,
+            turnVelocity,
+            turnAppliedVolts,
+            turnCurrent);
   }
 
   @Override
   public void updateInputs(ModuleIOInputs inputs) {
-    BaseStatusSignal.refreshAll(
-        drivePosition,
-        driveVelocity,
-        // driveAppliedVolts,
-        driveCurrent,
-        turnAbsolutePosition,
-        turnPosition,
-        turnVelocity,
-        turnAppliedVolts,
-        turnCurrent);
-
-    inputs.canCoderRotations = cancoder.getAbsolutePosition().getValue();
+    // Signals were refreshed by DriveSignalGroup
+    inputs.canCoderRotations = turnAbsolutePosition.getValueAsDouble();
     inputs.canCoderAngle = Units.rotationsToDegrees(inputs.canCoderRotations);
 
     inputs.drivePositionRotations = drivePosition.getValueAsDouble();
     inputs.driveVelocityRotationsPerSec = driveVelocity.getValueAsDouble();
     // inputs.driveAppliedVolts = driveAppliedVolts.getValueAsDouble();
-    inputs.driveCurrentAmps = new double[] {driveCurrent.getValueAsDouble()};
+    inputs.driveCurrentAmps[0] = driveCurrent.getValueAsDouble();
 
     inputs.turnAbsolutePosition = Rotation2d.fromRotations(turnAbsolutePosition.getValueAsDouble());
     inputs.turnPosition = Rotation2d.fromRotations(turnPosition.getValueAsDouble());
     inputs.turnPositionAngle = inputs.turnPosition.getDegrees();
     inputs.turnVelocityRadPerSec = Units.rotationsToRadians(turnVelocity.getValueAsDouble());
     inputs.turnAppliedVolts = turnAppliedVolts.getValueAsDouble();
-    inputs.turnCurrentAmps = new double[] {turnCurrent.getValueAsDouble()};
+    inputs.turnCurrentAmps[0] = turnCurrent.getValueAsDouble();
+
+    // Both signals are sampled in the same cycles, but each keeps its own capture time. They are
+    // drained over the same cycles, starting where both have samples, so the counts match unless
+    // the odometry thread dropped a sample of only one of them.
+    long endSequence = PhoenixOdometryThread.getInstance().getSnapshotSequence();
+    long startSequence =
+        Math.max(drivePositionBuffer.getOldestSequence(), turnPositionBuffer.getOldestSequence());
+    int driveCount =
+        drivePositionBuffer.drain(
+            drivePositionSamples, driveTimestampSamples, startSequence, endSequence);
+    int turnCount =
+        turnPositionBuffer.drain(
+            turnPositionSamples, turnTimestampSamples, startSequence, endSequence);
+    int sampleCount = Math.min(driveCount, turnCount);
+    if (driveCount != turnCount) {
+      discardedSampleCount += Math.abs(driveCount - turnCount);
+      Logger.recordOutput(discardedSamplesKey, discardedSampleCount);
+    }
+    if (inputs.odometryDriveTimestamps.length != sampleCount) {
+      inputs.odometryDriveTimestamps = new double[sampleCount];
+      inputs.odometryDrivePositionsRotations = new double[sampleCount];
+      inputs.odometryTurnTimestamps = new double[sampleCount];
+      inputs.odometryTurnPositionsRad = new double[sampleCount];
+    }
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryDriveTimestamps[i] = driveTimestampSamples[i] / 1e6;
+      inputs.odometryDrivePositionsRotations[i] = drivePositionSamples[i];
+      inputs.odometryTurnTimestamps[i] = turnTimestampSamples[i] / 1e6;
+      inputs.odometryTurnPositionsRad[i] = Units.rotationsToRadians(turnPositionSamples[i]);
+    }
+  }
+
+  @Override
+  public double getLatestTurnPositionRotations() {
+    return turnPositionBuffer.peekLatest();
   }
 
   @Override
@@ -205,18 +260,31 @@ public class ModuleIOTalonFX implements ModuleIO {
 
   @Override
   public void setDriveBrakeMode(boolean enable) {
-    var config = new MotorOutputConfigs();
-    config.Inverted = SDSMK4L1Constants.driveMotorInvert;
-    config.NeutralMode = enable ? NeutralModeValue.Brake : NeutralModeValue.Coast;
-    driveTalon.getConfigurator().apply(config);
+    // Applied in the background, and only when the mode changes
+    ConfigManager.getInstance()
+        .apply(
+            driveMotorOutputKey,
+            enable,
+            () -> {
+              var config = new MotorOutputConfigs();
+              config.Inverted = SDSMK4L1Constants.driveMotorInvert;
+              config.NeutralMode = enable ? NeutralModeValue.Brake : NeutralModeValue.Coast;
+              return driveTalon.getConfigurator().apply(config);
+            });
   }
 
   @Override
   public void setTurnBrakeMode(boolean enable) {
-    var config = new MotorOutputConfigs();
-    config.Inverted = SDSMK4L1Constants.angleMotorInvert;
-    config.NeutralMode = enable ? NeutralModeValue.Brake : NeutralModeValue.Coast;
-    turnTalon.getConfigurator().apply(config);
+    ConfigManager.getInstance()
+        .apply(
+            turnMotorOutputKey,
+            enable,
+            () -> {
+              var config = new MotorOutputConfigs();
+              config.Inverted = SDSMK4L1Constants.angleMotorInvert;
+              config.NeutralMode = enable ? NeutralModeValue.Brake : NeutralModeValue.Coast;
+              return turnTalon.getConfigurator().apply(config);
+            });
   }
 
   private TalonFXConfiguration getDriveConfig() {
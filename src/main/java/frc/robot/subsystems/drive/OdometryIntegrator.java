@@ -0,0 +1,155 @@
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Swerve odometry on primitive state. Covers the same math as {@code
+ * SwerveDriveKinematics.toTwist2d} and {@code Pose2d.exp}, but works on caller-owned arrays, so
+ * integrating a sample never allocates.
+ *
+ * <p>Poses are stored as {@code double[3]} arrays of x and y in meters and theta in radians.
+ */
+public class OdometryIntegrator {
+  private final int moduleCount;
+  // Least squares forward kinematics, the 3 x 2N pseudo-inverse of the inverse kinematics matrix
+  // stored row major. Multiplying it by the wheel displacement vector gives the robot twist.
+  private final double[] forwardKinematics;
+
+  private double twistDx = 0.0;
+  private double twistDy = 0.0;
+  private double twistDtheta = 0.0;
+
+  /**
+   * Creates an integrator for a drivetrain.
+   *
+   * @param moduleTranslations Location of every module relative to the robot center
+   */
+  public OdometryIntegrator(Translation2d[] moduleTranslations) {
+    moduleCount = moduleTranslations.length;
+    forwardKinematics = new double[3 * 2 * moduleCount];
+
+    // Each module contributes the rows [1, 0, -y] and [0, 1, x] to the inverse kinematics matrix A.
+    // Build A^T * A, then the pseudo-inverse (A^T * A)^-1 * A^T.
+    double sumX = 0.0;
+    double sumY = 0.0;
+    double sumSquares = 0.0;
+    for (var translation : moduleTranslations) {
+      sumX += translation.getX();
+      sumY += translation.getY();
+      sumSquares += translation.getNorm() * translation.getNorm();
+    }
+    double n = moduleCount;
+    double[][] ata = {{n, 0.0, -sumY}, {0.0, n, sumX}, {-sumY, sumX, sumSquares}};
+    double[][] inverse = invert3x3(ata);
+
+    for (int i = 0; i < moduleCount; i++) {
+      double x = moduleTranslations[i].getX();
+      double y = moduleTranslations[i].getY();
+      for (int row = 0; row < 3; row++) {
+        // Columns of A^T for this module are (1, 0, -y) and (0, 1, x)
+        int column = row * 2 * moduleCount + 2 * i;
+        forwardKinematics[column] = inverse[row][0] - inverse[row][2] * y;
+        forwardKinematics[column + 1] = inverse[row][1] + inverse[row][2] * x;
+      }
+    }
+  }
+
+  /**
+   * Computes the robot relative twist from the wheel displacements since the last sample. Read it
+   * back with {@link #getTwistDx()}, {@link #getTwistDy()} and {@link #getTwistDtheta()}.
+   *
+   * @param wheelDeltasMeters Distance each wheel drove since the last sample
+   * @param wheelAnglesRad Angle of each wheel
+   */
+  public void updateTwist(double[] wheelDeltasMeters, double[] wheelAnglesRad) {
+    int columns = 2 * moduleCount;
+    double dx = 0.0;
+    double dy = 0.0;
+    double dtheta = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      double wheelDx = wheelDeltasMeters[i] * Math.cos(wheelAnglesRad[i]);
+      double wheelDy = wheelDeltasMeters[i] * Math.sin(wheelAnglesRad[i]);
+      dx += forwardKinematics[2 * i] * wheelDx + forwardKinematics[2 * i + 1] * wheelDy;
+      dy +=
+          forwardKinematics[columns + 2 * i] * wheelDx
+              + forwardKinematics[columns + 2 * i + 1] * wheelDy;
+      dtheta +=
+          forwardKinematics[2 * columns + 2 * i] * wheelDx
+              + forwardKinematics[2 * columns + 2 * i + 1] * wheelDy;
+    }
+    twistDx = dx;
+    twistDy = dy;
+    twistDtheta = dtheta;
+  }
+
+  /** Returns the forward motion of the last twist in meters. */
+  public double getTwistDx() {
+    return twistDx;
+  }
+
+  /** Returns the sideways motion of the last twist in meters. */
+  public double getTwistDy() {
+    return twistDy;
+  }
+
+  /** Returns the rotation of the last twist in radians. */
+  public double getTwistDtheta() {
+    return twistDtheta;
+  }
+
+  /**
+   * Moves a pose along a robot relative twist, assuming constant curvature, in place.
+   *
+   * @param pose Pose array of x, y and theta
+   * @param dx Forward motion in meters
+   * @param dy Sideways motion in meters
+   * @param dtheta Rotation in radians
+   */
+  public static void exp(double[] pose, double dx, double dy, double dtheta) {
+    double s;
+    double c;
+    if (Math.abs(dtheta) < 1E-9) {
+      s = 1.0 - dtheta * dtheta / 6.0;
+      c = 0.5 * dtheta;
+    } else {
+      s = Math.sin(dtheta) / dtheta;
+      c = (1.0 - Math.cos(dtheta)) / dtheta;
+    }
+    double localX = dx * s - dy * c;
+    double localY = dx * c + dy * s;
+
+    double cos = Math.cos(pose[2]);
+    double sin = Math.sin(pose[2]);
+    pose[0] += localX * cos - localY * sin;
+    pose[1] += localX * sin + localY * cos;
+    pose[2] = MathUtil.angleModulus(pose[2] + dtheta);
+  }
+
+  private static double[][] invert3x3(double[][] m) {
+    double c00 = m[1][1] * m[2][2] - m[1][2] * m[2][1];
+    double c01 = m[1][2] * m[2][0] - m[1][0] * m[2][2];
+    double c02 = m[1][0] * m[2][1] - m[1][1] * m[2][0];
+    double determinant = m[0][0] * c00 + m[0][1] * c01 + m[0][2] * c02;
+    if (Math.abs(determinant) < 1E-12) {
+      throw new IllegalArgumentException("Module translations do not define a drivetrain");
+    }
+    return new double[][] {
+      {
+        c00 / determinant,
+        (m[0][2] * m[2][1] - m[0][1] * m[2][2]) / determinant,
+        (m[0][1] * m[1][2] - m[0][2] * m[1][1]) / determinant
+      },
+      {
+        c01 / determinant,
+        (m[0][0] * m[2][2] - m[0][2] * m[2][0]) / determinant,
+        (m[0][2] * m[1][0] - m[0][0] * m[1][2]) / determinant
+      },
+      {
+        c02 / determinant,
+        (m[0][1] * m[2][0] - m[0][0] * m[2][1]) / determinant,
+        (m[0][0] * m[1][1] - m[0][1] * m[1][0]) / determinant
+      }
+    };
+  }
+}
@@ -15,29 +15,117 @@ package frc.robot.subsystems.drive;
 
 import com.ctre.phoenix6.BaseStatusSignal;
 import com.ctre.phoenix6.CANBus;
+import com.ctre.phoenix6.StatusCode;
 import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.Timestamp;
+import com.ctre.phoenix6.Utils;
 import com.ctre.phoenix6.hardware.ParentDevice;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.locks.Lock;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.lib.SampleRingBuffer;
+import frc.lib.ThreadPriorityManager;
+import frc.lib.TimingHistogram;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
+import org.littletonrobotics.junction.Logger;
 
 /**
- * Provides an interface for asynchronously reading high-frequency measurements to a set of queues.
+ * Provides an interface for asynchronously reading high-frequency measurements to a set of ring
+ * buffers. Every sample is stored together with its FPGA timestamp in microseconds. Phoenix samples
+ * carry the time they were captured on the bus (the CANivore or device timestamp when available),
+ * converted from the Phoenix time base to FPGA time, instead of the time this thread read them.
+ * Other sensors are registered as a {@link CapturedSignal}, which stamps its own samples and only
+ * offers the ones it has not offered before.
  *
  * <p>This version is intended for Phoenix 6 devices on both the RIO and CANivore buses. When using
  * a CANivore, the thread uses the "waitForAll" blocking method to enable more consistent sampling.
  * This also allows Phoenix Pro users to benefit from lower latency between devices using CANivore
  * time synchronization.
+ *
+ * <p>The sampling loop never takes a lock. Registration publishes a new immutable {@link SignalSet}
+ * which the loop picks up on its next cycle, and every cycle is published to the consumer as one
+ * sequence number. {@link #takeSnapshot()} freezes that sequence so every buffer drained during a
+ * robot cycle ends on the same sample.
+ *
+ * <p>On a bus without CAN FD the loop runs on absolute deadlines computed from its start time, so
+ * the time spent sampling never pushes the following cycle back.
  */
 public class PhoenixOdometryThread extends Thread {
-  private final Lock signalsLock =
-      new ReentrantLock(); // Prevents conflicts when registering signals
-  private BaseStatusSignal[] signals = new BaseStatusSignal[0];
-  private final List<Queue<Double>> queues = new ArrayList<>();
-  private boolean isCANFD = false;
+  /** Number of samples each buffer holds, about half a second at the odometry frequency. */
+  public static final int BUFFER_CAPACITY = 128;
+
+  private static final long PERIOD_NANOS = (long) (1e9 / Module.ODOMETRY_FREQUENCY);
+  private static final long METRICS_PERIOD_MICROS = 1000000;
+
+  /**
+   * Non-Phoenix signal that knows when its values were captured, e.g. a sensor that updates at its
+   * own rate. Called from the odometry thread every cycle, so it must be thread safe.
+   */
+  public interface CapturedSignal {
+    /**
+     * Reads the newest value of the sensor.
+     *
+     * @param fpgaTimestamp FPGA time in microseconds of this cycle
+     * @return FPGA time in microseconds the value was captured, or a negative number if the sensor
+     *     has no new value since the last call
+     */
+    long read(long fpgaTimestamp);
+
+    /** Returns the value read by the last call to {@link #read} that returned a capture time. */
+    double getValue();
+  }
+
+  /** Immutable set of registered signals, replaced as a whole on every registration. */
+  private static final class SignalSet {
+    private final BaseStatusSignal[] signals;
+    private final SampleRingBuffer[] buffers;
+    private final CapturedSignal[] capturedSignals;
+    private final SampleRingBuffer[] capturedBuffers;
+    private final boolean isCANFD;
+
+    private SignalSet(
+        BaseStatusSignal[] signals,
+        SampleRingBuffer[] buffers,
+        CapturedSignal[] capturedSignals,
+        SampleRingBuffer[] capturedBuffers,
+        boolean isCANFD) {
+      this.signals = signals;
+      this.buffers = buffers;
+      this.capturedSignals = capturedSignals;
+      this.capturedBuffers = capturedBuffers;
+      this.isCANFD = isCANFD;
+    }
+  }
+
+  // Only serializes registrations against each other, never held by the sampling loop
+  private final ReentrantLock registrationLock = new ReentrantLock();
+  private volatile SignalSet signalSet =
+      new SignalSet(
+          new BaseStatusSignal[0],
+          new SampleRingBuffer[0],
+          new CapturedSignal[0],
+          new SampleRingBuffer[0],
+          false);
+
+  private volatile long publishedSequence = 0; // Number of cycles written to the buffers
+  private long snapshotSequence = 0; // Only used by the main thread
+  private long nextDeadlineNanos = 0; // Only used by the sampling loop
+  private long lastCycleNanos = 0; // Only used by the sampling loop
+
+  // Metrics written by the sampling loop and registration, read and reset by logMetrics()
+  private final AtomicLong cycleCount = new AtomicLong();
+  private final AtomicLong waitTimeTotalMicros = new AtomicLong();
+  private final AtomicLong waitTimeMaxMicros = new AtomicLong();
+  private final AtomicLong waitErrorCount = new AtomicLong();
+  private final AtomicLong droppedSampleCount = new AtomicLong();
+  private final AtomicLong registrationContentionCount = new AtomicLong();
+  private final AtomicLong missedDeadlineCount = new AtomicLong();
+  private final TimingHistogram jitterHistogram = new TimingHistogram(100, 40);
+
+  // Main thread only, metrics are published once per window
+  private long metricsWindowStart = 0;
+  private final long[] jitterBucketCounts = new long[jitterHistogram.getBucketCount() + 1];
 
   private static PhoenixOdometryThread instance = null;
 
@@ -54,55 +142,209 @@ public class PhoenixOdometryThread extends Thread {
     start();
   }
 
-  public Queue<Double> registerSignal(ParentDevice device, StatusSignal<Double> signal) {
-    Queue<Double> queue = new ArrayBlockingQueue<>(100);
-    signalsLock.lock();
-    Drive.odometryLock.lock();
+  public SampleRingBuffer registerSignal(ParentDevice device, StatusSignal<Double> signal) {
+    SampleRingBuffer buffer = new SampleRingBuffer(BUFFER_CAPACITY);
+    lockRegistration();
+    try {
+      SignalSet current = signalSet;
+      BaseStatusSignal[] newSignals = Arrays.copyOf(current.signals, current.signals.length + 1);
+      newSignals[current.signals.length] = signal;
+      SampleRingBuffer[] newBuffers = Arrays.copyOf(current.buffers, current.buffers.length + 1);
+      newBuffers[current.buffers.length] = buffer;
+      signalSet =
+          new SignalSet(
+              newSignals,
+              newBuffers,
+              current.capturedSignals,
+              current.capturedBuffers,
+              CANBus.isNetworkFD(device.getNetwork()));
+    } finally {
+      registrationLock.unlock();
+    }
+    return buffer;
+  }
+
+  /** Registers a non-Phoenix signal (e.g. the NavX yaw) to be polled alongside the Phoenix ones. */
+  public SampleRingBuffer registerSignal(CapturedSignal signal) {
+    SampleRingBuffer buffer = new SampleRingBuffer(BUFFER_CAPACITY);
+    lockRegistration();
     try {
-      isCANFD = CANBus.isNetworkFD(device.getNetwork());
-      BaseStatusSignal[] newSignals = new BaseStatusSignal[signals.length + 1];
-      System.arraycopy(signals, 0, newSignals, 0, signals.length);
-      newSignals[signals.length] = signal;
-      signals = newSignals;
-      queues.add(queue);
+      SignalSet current = signalSet;
+      CapturedSignal[] newCapturedSignals =
+          Arrays.copyOf(current.capturedSignals, current.capturedSignals.length + 1);
+      newCapturedSignals[current.capturedSignals.length] = signal;
+      SampleRingBuffer[] newCapturedBuffers =
+          Arrays.copyOf(current.capturedBuffers, current.capturedBuffers.length + 1);
+      newCapturedBuffers[current.capturedBuffers.length] = buffer;
+      signalSet =
+          new SignalSet(
+              current.signals,
+              current.buffers,
+              newCapturedSignals,
+              newCapturedBuffers,
+              current.isCANFD);
     } finally {
-      signalsLock.unlock();
-      Drive.odometryLock.unlock();
+      registrationLock.unlock();
+    }
+    return buffer;
+  }
+
+  private void lockRegistration() {
+    if (!registrationLock.tryLock()) {
+      registrationContentionCount.incrementAndGet();
+      registrationLock.lock();
+    }
+  }
+
+  /**
+   * Freezes the samples returned by {@link #getSnapshotSequence()} for this cycle. Call once per
+   * robot cycle on the main thread, before any buffer is drained.
+   */
+  public void takeSnapshot() {
+    snapshotSequence = publishedSequence;
+  }
+
+  /** Returns the sequence every buffer should be drained up to during this cycle. */
+  public long getSnapshotSequence() {
+    return snapshotSequence;
+  }
+
+  /**
+   * Logs the sampling metrics collected over the last second. Call every cycle from the main
+   * thread, the metrics are only published once the window has elapsed.
+   */
+  public void logMetrics() {
+    long now = RobotController.getFPGATime();
+    if (metricsWindowStart == 0) {
+      metricsWindowStart = now;
+      return;
+    }
+    long windowMicros = now - metricsWindowStart;
+    if (windowMicros < METRICS_PERIOD_MICROS) {
+      return;
+    }
+    metricsWindowStart = now;
+
+    long cycles = cycleCount.getAndSet(0);
+    long waitTotal = waitTimeTotalMicros.getAndSet(0);
+    Logger.recordOutput("Odometry/Thread/RateHz", cycles / (windowMicros / 1e6));
+    Logger.recordOutput(
+        "Odometry/Thread/AverageWaitMs", cycles > 0 ? waitTotal / (double) cycles / 1000.0 : 0.0);
+    Logger.recordOutput("Odometry/Thread/MaxWaitMs", waitTimeMaxMicros.getAndSet(0) / 1000.0);
+    Logger.recordOutput("Odometry/Thread/WaitErrors", waitErrorCount.getAndSet(0));
+    Logger.recordOutput("Odometry/Thread/DroppedSamples", droppedSampleCount.getAndSet(0));
+    Logger.recordOutput("Odometry/Thread/MissedDeadlines", missedDeadlineCount.getAndSet(0));
+    Logger.recordOutput(
+        "Odometry/Thread/RegistrationContention", registrationContentionCount.get());
+
+    Logger.recordOutput("Odometry/Thread/JitterP50Ms", jitterHistogram.getPercentile(0.5) / 1e3);
+    Logger.recordOutput("Odometry/Thread/JitterP99Ms", jitterHistogram.getPercentile(0.99) / 1e3);
+    Logger.recordOutput("Odometry/Thread/JitterMaxMs", jitterHistogram.getMax() / 1e3);
+    jitterHistogram.getBucketCounts(jitterBucketCounts);
+    Logger.recordOutput("Odometry/Thread/JitterHistogram", jitterBucketCounts);
+    jitterHistogram.reset();
+  }
+
+  /**
+   * Parks until the next absolute deadline, then advances it by one period. Deadlines that have
+   * already passed are counted as missed and skipped rather than run back to back.
+   */
+  private void waitForNextDeadline() {
+    long now = System.nanoTime();
+    if (nextDeadlineNanos == 0) {
+      nextDeadlineNanos = now + PERIOD_NANOS;
+    }
+    while (now < nextDeadlineNanos) {
+      LockSupport.parkNanos(nextDeadlineNanos - now);
+      now = System.nanoTime();
     }
-    return queue;
+
+    // Lateness relative to the deadline is the scheduling jitter
+    jitterHistogram.record((now - nextDeadlineNanos) / 1000);
+    nextDeadlineNanos += PERIOD_NANOS;
+    if (now >= nextDeadlineNanos) {
+      long missed = (now - nextDeadlineNanos) / PERIOD_NANOS + 1;
+      missedDeadlineCount.addAndGet(missed);
+      nextDeadlineNanos += missed * PERIOD_NANOS;
+    }
+  }
+
+  /**
+   * Returns the FPGA time in microseconds that a Phoenix signal was captured. This uses the best
+   * timestamp Phoenix has for the signal (device, CANivore, or when the RIO received it), so the
+   * CAN latency is already removed.
+   */
+  private static long getSampleTimestamp(
+      BaseStatusSignal signal, double phoenixToFpgaSeconds, long fpgaTimestamp) {
+    Timestamp timestamp = signal.getTimestamp();
+    if (!timestamp.isValid()) {
+      return fpgaTimestamp;
+    }
+    return (long) ((timestamp.getTime() + phoenixToFpgaSeconds) * 1e6);
   }
 
   @Override
   public void run() {
+    ThreadPriorityManager.getInstance().configureCurrentThread("PhoenixOdometryThread");
     while (true) {
+      SignalSet set = signalSet;
+      long sequence = publishedSequence;
+
       // Wait for updates from all signals
-      signalsLock.lock();
-      try {
-        if (isCANFD) {
-          BaseStatusSignal.waitForAll(2.0 / Module.ODOMETRY_FREQUENCY, signals);
-        } else {
-          // "waitForAll" does not support blocking on multiple
-          // signals with a bus that is not CAN FD, regardless
-          // of Pro licensing. No reasoning for this behavior
-          // is provided by the documentation.
-          Thread.sleep((long) (1000.0 / Module.ODOMETRY_FREQUENCY));
-          if (signals.length > 0) BaseStatusSignal.refreshAll(signals);
+      long waitStart = RobotController.getFPGATime();
+      if (set.isCANFD) {
+        StatusCode status =
+            BaseStatusSignal.waitForAll(2.0 / Module.ODOMETRY_FREQUENCY, set.signals);
+        if (!status.isOK()) {
+          waitErrorCount.incrementAndGet();
         }
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      } finally {
-        signalsLock.unlock();
+
+        // The device frames pace this loop, jitter is the deviation from the nominal period
+        long now = System.nanoTime();
+        if (lastCycleNanos != 0) {
+          jitterHistogram.record(Math.abs(now - lastCycleNanos - PERIOD_NANOS) / 1000);
+        }
+        lastCycleNanos = now;
+      } else {
+        // "waitForAll" does not support blocking on multiple
+        // signals with a bus that is not CAN FD, regardless
+        // of Pro licensing. No reasoning for this behavior
+        // is provided by the documentation.
+        waitForNextDeadline();
+        if (set.signals.length > 0) BaseStatusSignal.refreshAll(set.signals);
       }
+      long waitTime = RobotController.getFPGATime() - waitStart;
+      waitTimeTotalMicros.addAndGet(waitTime);
+      waitTimeMaxMicros.accumulateAndGet(waitTime, Math::max);
+
+      // Phoenix timestamps use their own time base, measure its offset from the FPGA clock
+      long fpgaTimestamp = RobotController.getFPGATime();
+      double phoenixToFpgaSeconds = fpgaTimestamp / 1e6 - Utils.getCurrentTimeSeconds();
 
-      // Save new data to queues
-      Drive.odometryLock.lock();
-      try {
-        for (int i = 0; i < signals.length; i++) {
-          queues.get(i).offer(signals[i].getValueAsDouble());
+      // Save new data to buffers, then publish the whole cycle at once
+      int dropped = 0;
+      for (int i = 0; i < set.signals.length; i++) {
+        if (!set.buffers[i].offer(
+            set.signals[i].getValueAsDouble(),
+            getSampleTimestamp(set.signals[i], phoenixToFpgaSeconds, fpgaTimestamp),
+            sequence)) {
+          dropped++;
         }
-      } finally {
-        Drive.odometryLock.unlock();
       }
+      // Other sensors only offer the values they have not offered yet
+      for (int i = 0; i < set.capturedSignals.length; i++) {
+        long captureTimestamp = set.capturedSignals[i].read(fpgaTimestamp);
+        if (captureTimestamp >= 0
+            && !set.capturedBuffers[i].offer(
+                set.capturedSignals[i].getValue(), captureTimestamp, sequence)) {
+          dropped++;
+        }
+      }
+      if (dropped > 0) {
+        droppedSampleCount.addAndGet(dropped);
+      }
+      publishedSequence = sequence + 1;
+      cycleCount.incrementAndGet();
     }
   }
 }
@@ -0,0 +1,160 @@
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import java.util.Optional;
+
+/**
+ * Bounded history of timestamped poses for latency-compensated queries.
+ *
+ * <p>Samples are kept in a ring of parallel primitive arrays (timestamp, x, y, theta) rather than a
+ * map of {@link Pose2d}s, so adding a sample never allocates. Lookups binary search the timestamps
+ * and interpolate between the two surrounding samples.
+ */
+public class PoseHistory {
+  private final double[] timestamps;
+  private final double[] xs;
+  private final double[] ys;
+  private final double[] thetas;
+  private final int mask;
+
+  private int start = 0; // Physical index of the oldest sample
+  private int size = 0;
+
+  /**
+   * Creates a pose history.
+   *
+   * @param capacity Minimum number of samples held, rounded up to the next power of two
+   */
+  public PoseHistory(int capacity) {
+    if (capacity < 1 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("Invalid pose history capacity: " + capacity);
+    }
+    int length = Integer.highestOneBit(capacity);
+    if (length < capacity) {
+      length <<= 1;
+    }
+    timestamps = new double[length];
+    xs = new double[length];
+    ys = new double[length];
+    thetas = new double[length];
+    mask = length - 1;
+  }
+
+  /**
+   * Adds a sample, replacing the oldest one once the history is full. Samples must be added in
+   * timestamp order, older samples are ignored.
+   *
+   * @param timestamp FPGA timestamp in seconds
+   * @param x X position in meters
+   * @param y Y position in meters
+   * @param theta Rotation in radians
+   */
+  public void addSample(double timestamp, double x, double y, double theta) {
+    if (size > 0 && timestamp < timestamps[physicalIndex(size - 1)]) {
+      return;
+    }
+    int index;
+    if (size < timestamps.length) {
+      index = physicalIndex(size);
+      size++;
+    } else {
+      index = start;
+      start = (start + 1) & mask;
+    }
+    timestamps[index] = timestamp;
+    xs[index] = x;
+    ys[index] = y;
+    thetas[index] = theta;
+  }
+
+  /** Removes every sample, e.g. after the pose is reset. */
+  public void clear() {
+    start = 0;
+    size = 0;
+  }
+
+  /** Returns the number of samples held. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the timestamp of the oldest sample, or NaN when empty. */
+  public double getOldestTimestamp() {
+    return size > 0 ? timestamps[start] : Double.NaN;
+  }
+
+  /** Returns the timestamp of the newest sample, or NaN when empty. */
+  public double getNewestTimestamp() {
+    return size > 0 ? timestamps[physicalIndex(size - 1)] : Double.NaN;
+  }
+
+  /**
+   * Writes the interpolated pose at a timestamp into the caller's array without allocating.
+   * Timestamps after the newest sample return the newest pose.
+   *
+   * @param timestamp FPGA timestamp in seconds
+   * @param poseOut Array of at least three elements, filled with x, y and theta
+   * @return False if the history is empty or the timestamp is older than the oldest sample
+   */
+  public boolean getPoseAt(double timestamp, double[] poseOut) {
+    if (size == 0 || timestamp < timestamps[start]) {
+      return false;
+    }
+
+    // Binary search for the first sample at or after the timestamp
+    int low = 0;
+    int high = size - 1;
+    if (timestamp >= timestamps[physicalIndex(high)]) {
+      int newest = physicalIndex(high);
+      poseOut[0] = xs[newest];
+      poseOut[1] = ys[newest];
+      poseOut[2] = thetas[newest];
+      return true;
+    }
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[physicalIndex(mid)] < timestamp) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    int after = physicalIndex(low);
+    if (low == 0 || timestamps[after] == timestamp) {
+      poseOut[0] = xs[after];
+      poseOut[1] = ys[after];
+      poseOut[2] = thetas[after];
+      return true;
+    }
+    int before = physicalIndex(low - 1);
+    double t = (timestamp - timestamps[before]) / (timestamps[after] - timestamps[before]);
+    poseOut[0] = xs[before] + (xs[after] - xs[before]) * t;
+    poseOut[1] = ys[before] + (ys[after] - ys[before]) * t;
+    poseOut[2] =
+        MathUtil.angleModulus(
+            thetas[before] + MathUtil.angleModulus(thetas[after] - thetas[before]) * t);
+    return true;
+  }
+
+  /**
+   * Returns the interpolated pose at a timestamp.
+   *
+   * @param timestamp FPGA timestamp in seconds
+   * @return The pose, or empty if the history is empty or the timestamp is older than the oldest
+   *     sample
+   */
+  public Optional<Pose2d> getPoseAt(double timestamp) {
+    double[] pose = new double[3];
+    if (!getPoseAt(timestamp, pose)) {
+      return Optional.empty();
+    }
+    return Optional.of(new Pose2d(pose[0], pose[1], new Rotation2d(pose[2])));
+  }
+
+  private int physicalIndex(int logicalIndex) {
+    return (start + logicalIndex) & mask;
+  }
+}
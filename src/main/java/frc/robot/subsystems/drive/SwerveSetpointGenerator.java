@@ -0,0 +1,224 @@
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+/**
+ * Turns a desired chassis speed into module setpoints the drivetrain can actually follow.
+ *
+ * <p>Every cycle the setpoint moves from the measured chassis speeds toward the desired speeds by
+ * the largest step that keeps the chassis jerk, every wheel's acceleration and every module's
+ * steering rate within their limits. Moving along the line between two chassis speeds keeps the
+ * module states consistent with each other, so the robot follows the commanded motion rather than
+ * skidding while the slowest module catches up. Steering is checked against the measured module
+ * angles, so a robot at rest first turns its modules and only then drives off.
+ */
+public class SwerveSetpointGenerator {
+  private static final double MOVING_SPEED = 0.05; // Meters per sec, below it steering is free
+  private static final int SEARCH_ITERATIONS = 10;
+
+  private final SwerveDriveKinematics kinematics;
+  private final double[] moduleX;
+  private final double[] moduleY;
+  private final double driveBaseRadius;
+  private final double maxWheelSpeed;
+  private final double maxWheelAccel;
+  private final double maxSteerVelocity;
+  private final double maxChassisJerk;
+
+  // Chassis acceleration of the last setpoint, with the angular part in meters per sec squared at
+  // the drive base radius
+  private final double[] lastAccel = new double[3];
+
+  // Measured and target chassis speeds of the current cycle, angular at the drive base radius
+  private final double[] startSpeeds = new double[3];
+  private final double[] targetSpeeds = new double[3];
+
+  /**
+   * Creates a setpoint generator.
+   *
+   * @param kinematics Kinematics of the drive, used for the final module states so its stored
+   *     headings are kept
+   * @param moduleTranslations Location of every module relative to the robot center
+   * @param maxWheelSpeed Maximum wheel speed in meters per sec
+   * @param maxWheelAccel Maximum wheel acceleration in meters per sec squared
+   * @param maxSteerVelocity Maximum module steering rate in radians per sec
+   * @param maxChassisJerk Maximum chassis jerk in meters per sec cubed
+   */
+  public SwerveSetpointGenerator(
+      SwerveDriveKinematics kinematics,
+      Translation2d[] moduleTranslations,
+      double maxWheelSpeed,
+      double maxWheelAccel,
+      double maxSteerVelocity,
+      double maxChassisJerk) {
+    this.kinematics = kinematics;
+    moduleX = new double[moduleTranslations.length];
+    moduleY = new double[moduleTranslations.length];
+    double radius = 0.0;
+    for (int i = 0; i < moduleTranslations.length; i++) {
+      moduleX[i] = moduleTranslations[i].getX();
+      moduleY[i] = moduleTranslations[i].getY();
+      radius = Math.max(radius, moduleTranslations[i].getNorm());
+    }
+    driveBaseRadius = radius;
+    this.maxWheelSpeed = maxWheelSpeed;
+    this.maxWheelAccel = maxWheelAccel;
+    this.maxSteerVelocity = maxSteerVelocity;
+    this.maxChassisJerk = maxChassisJerk;
+  }
+
+  /**
+   * Generates the module setpoints for this cycle.
+   *
+   * @param desiredSpeeds Desired robot relative speeds
+   * @param currentStates Measured module states, in the same order as the module translations
+   * @param dtSeconds Time until the next setpoint
+   * @return Module states to command
+   */
+  public SwerveModuleState[] generate(
+      ChassisSpeeds desiredSpeeds, SwerveModuleState[] currentStates, double dtSeconds) {
+    ChassisSpeeds currentSpeeds = kinematics.toChassisSpeeds(currentStates);
+    startSpeeds[0] = currentSpeeds.vxMetersPerSecond;
+    startSpeeds[1] = currentSpeeds.vyMetersPerSecond;
+    startSpeeds[2] = currentSpeeds.omegaRadiansPerSecond * driveBaseRadius;
+
+    // Scale the desired speeds down until every wheel is within its maximum speed
+    targetSpeeds[0] = desiredSpeeds.vxMetersPerSecond;
+    targetSpeeds[1] = desiredSpeeds.vyMetersPerSecond;
+    targetSpeeds[2] = desiredSpeeds.omegaRadiansPerSecond * driveBaseRadius;
+    double fastestWheel = 0.0;
+    for (int i = 0; i < moduleX.length; i++) {
+      fastestWheel =
+          Math.max(fastestWheel, Math.hypot(wheelVx(targetSpeeds, i), wheelVy(targetSpeeds, i)));
+    }
+    if (fastestWheel > maxWheelSpeed) {
+      scale(targetSpeeds, maxWheelSpeed / fastestWheel);
+    }
+
+    // Limit the change in chassis acceleration
+    double maxAccelChange = maxChassisJerk * dtSeconds;
+    double jerkNorm = 0.0;
+    for (int axis = 0; axis < 3; axis++) {
+      double accelChange = (targetSpeeds[axis] - startSpeeds[axis]) / dtSeconds - lastAccel[axis];
+      jerkNorm += accelChange * accelChange;
+    }
+    jerkNorm = Math.sqrt(jerkNorm);
+    if (jerkNorm > maxAccelChange) {
+      double jerkScale = maxAccelChange / jerkNorm;
+      for (int axis = 0; axis < 3; axis++) {
+        double accelChange = (targetSpeeds[axis] - startSpeeds[axis]) / dtSeconds - lastAccel[axis];
+        double accel = lastAccel[axis] + accelChange * jerkScale;
+        targetSpeeds[axis] = startSpeeds[axis] + accel * dtSeconds;
+      }
+    }
+
+    // Largest fraction of the step every wheel can accelerate through, the wheel velocities are
+    // linear in the fraction so this is exact
+    double fraction = 1.0;
+    double maxWheelChange = maxWheelAccel * dtSeconds;
+    for (int i = 0; i < moduleX.length; i++) {
+      double wheelChange =
+          Math.hypot(
+              wheelVx(targetSpeeds, i) - wheelVx(startSpeeds, i),
+              wheelVy(targetSpeeds, i) - wheelVy(startSpeeds, i));
+      if (wheelChange > maxWheelChange) {
+        fraction = Math.min(fraction, maxWheelChange / wheelChange);
+      }
+    }
+
+    // Steering is not linear in the fraction, search for the largest fraction that fits
+    if (!isSteeringFeasible(fraction, currentStates, dtSeconds)) {
+      double low = 0.0;
+      double high = fraction;
+      for (int i = 0; i < SEARCH_ITERATIONS; i++) {
+        double mid = (low + high) / 2.0;
+        if (isSteeringFeasible(mid, currentStates, dtSeconds)) {
+          low = mid;
+        } else {
+          high = mid;
+        }
+      }
+      fraction = low;
+    }
+
+    for (int axis = 0; axis < 3; axis++) {
+      double setpoint = startSpeeds[axis] + (targetSpeeds[axis] - startSpeeds[axis]) * fraction;
+      lastAccel[axis] = (setpoint - startSpeeds[axis]) / dtSeconds;
+      targetSpeeds[axis] = setpoint;
+    }
+    SwerveModuleState[] setpointStates =
+        kinematics.toSwerveModuleStates(
+            new ChassisSpeeds(targetSpeeds[0], targetSpeeds[1], targetSpeeds[2] / driveBaseRadius));
+
+    // The search skips modules below the moving speed, and no fraction may have fit at all, so a
+    // module can still be out of reach. Limit its steering rate and only drive it by the part of
+    // its speed along the angle it reaches.
+    double maxSteerChange = maxSteerVelocity * dtSeconds;
+    for (int i = 0; i < setpointStates.length; i++) {
+      Rotation2d currentAngle = currentStates[i].angle;
+      var state = SwerveModuleState.optimize(setpointStates[i], currentAngle);
+      double steerError = MathUtil.angleModulus(state.angle.minus(currentAngle).getRadians());
+      if (Math.abs(steerError) > maxSteerChange) {
+        double steerChange = Math.copySign(maxSteerChange, steerError);
+        state =
+            new SwerveModuleState(
+                state.speedMetersPerSecond * Math.cos(steerError - steerChange),
+                currentAngle.plus(new Rotation2d(steerChange)));
+      }
+      setpointStates[i] = state;
+    }
+    return setpointStates;
+  }
+
+  /** Clears the acceleration history, e.g. after the drive was disabled. */
+  public void reset() {
+    for (int axis = 0; axis < 3; axis++) {
+      lastAccel[axis] = 0.0;
+    }
+  }
+
+  /**
+   * Returns whether every module that would be moving at the given fraction of the step can steer
+   * from its measured angle to its angle at that fraction in time. Modules may reverse instead of
+   * turning past 90 degrees.
+   */
+  private boolean isSteeringFeasible(
+      double fraction, SwerveModuleState[] currentStates, double dtSeconds) {
+    double maxSteerChange = maxSteerVelocity * dtSeconds;
+    for (int i = 0; i < moduleX.length; i++) {
+      double startVx = wheelVx(startSpeeds, i);
+      double startVy = wheelVy(startSpeeds, i);
+      double vx = startVx + (wheelVx(targetSpeeds, i) - startVx) * fraction;
+      double vy = startVy + (wheelVy(targetSpeeds, i) - startVy) * fraction;
+      if (Math.hypot(vx, vy) < MOVING_SPEED) {
+        continue;
+      }
+      double steer =
+          Math.abs(
+              MathUtil.angleModulus(Math.atan2(vy, vx) - currentStates[i].angle.getRadians()));
+      if (Math.min(steer, Math.PI - steer) > maxSteerChange) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private double wheelVx(double[] speeds, int module) {
+    return speeds[0] - speeds[2] / driveBaseRadius * moduleY[module];
+  }
+
+  private double wheelVy(double[] speeds, int module) {
+    return speeds[1] + speeds[2] / driveBaseRadius * moduleX[module];
+  }
+
+  private static void scale(double[] speeds, double factor) {
+    for (int axis = 0; axis < 3; axis++) {
+      speeds[axis] *= factor;
+    }
+  }
+}
@@ -14,10 +14,10 @@
 package frc.robot.subsystems.intake;
 
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.lib.SpikeSubsystem;
 import frc.robot.subsystems.drive.Drive;
 
-public class Intake extends SubsystemBase {
+public class Intake extends SpikeSubsystem {
   private final Drive drive;
 
   private final IntakeIOTalonFX feedMotor;
@@ -26,6 +26,7 @@ public class Intake extends SubsystemBase {
   private double feedSetSpeed = 10.0; /* pulley rotations per second */
 
   public Intake(Drive drive) {
+    super(UpdateRate.HZ_25);
     this.drive = drive;
     feedMotor = new IntakeIOTalonFX(12);
     this.disableIntake();
@@ -33,10 +34,11 @@ public class Intake extends SubsystemBase {
     // SmartDashboard.setDefaultNumber("Intake Speed Setpoint(RPS)", feedSetSpeed);
   }
 
-  public void periodic() {
+  @Override
+  protected void subsystemPeriodic() {
     // feedSetSpeed = SmartDashboard.getNumber("Intake Speed Setpoint(RPS)", feedSetSpeed);
 
-    ChassisSpeeds robotSpeed = drive.getChassisSpeed();
+    ChassisSpeeds robotSpeed = drive.getState().robotRelativeSpeeds();
     double speed = robotSpeed.vxMetersPerSecond;
 
     feedMotor.updateInputs(feedMotorInputs, speed);
@@ -1,8 +1,8 @@
 package frc.robot.subsystems.launcher;
 
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.lib.SpikeSubsystem;
 
-public class Launcher extends SubsystemBase {
+public class Launcher extends SpikeSubsystem {
   private static final int LAUNCHER_MOTOR_ID = 13;
   private static final double LAUNCHER_SET_SPEED = 41.0;
   private static final double LAUNCHER_READY_THRESHOLD = 2.0;
@@ -24,7 +24,7 @@ public class Launcher extends SubsystemBase {
   }
 
   @Override
-  public void periodic() {
+  protected void subsystemPeriodic() {
     // Update the color sensor and vision inputs
     launchMotor.updateInputs(launchMotorInputs);
     proximitySensorIO.updateInputs(rightSightSensorInputs);
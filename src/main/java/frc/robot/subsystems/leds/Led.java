@@ -1,22 +1,23 @@
 package frc.robot.subsystems.leds;
 
 import edu.wpi.first.wpilibj.motorcontrol.Spark;
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.lib.SpikeSubsystem;
 import frc.robot.subsystems.launcher.Launcher;
 
-public class Led extends SubsystemBase {
+public class Led extends SpikeSubsystem {
   private int kPort;
   private Spark m_led;
   private Launcher m_launcher;
 
   public Led(int port, Launcher launcher) {
+    super(UpdateRate.HZ_10);
     kPort = port;
     m_led = new Spark(kPort);
     m_launcher = launcher;
   }
 
   @Override
-  public void periodic() {
+  protected void subsystemPeriodic() {
     /* https://www.revrobotics.com/content/docs/REV-11-1105-UM.pdf */
     /* Page 14 for LED table */
     if (m_launcher.isNoteDetected()) {
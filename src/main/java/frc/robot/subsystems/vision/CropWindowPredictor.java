@@ -0,0 +1,112 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.util.Units;
+
+/**
+ * Predicts where the AprilTags will appear in a camera image, so the camera can crop to them.
+ *
+ * <p>Every tag of the field layout is moved into the camera frame using the robot pose and the
+ * camera's robot-space pose, then projected to the normalized image coordinates the Limelight crop
+ * uses, from -1 to 1 with x to the right and y up. The window covers every tag at least partly in
+ * view, padded for the tag size, the robot's rotation until the next update and pose error.
+ */
+public class CropWindowPredictor {
+  private static final double HORIZONTAL_FOV = Units.degreesToRadians(62.5);
+  private static final double VERTICAL_FOV = Units.degreesToRadians(48.9);
+  // Half of the tag diagonal, including the white border
+  private static final double TAG_HALF_DIAGONAL = Units.inchesToMeters(8.125) / Math.sqrt(2.0);
+  private static final double MIN_TAG_DEPTH = 0.3; // Meters, closer tags are ignored
+  private static final double MARGIN = 0.15; // Normalized image units
+
+  private final AprilTagFieldLayout layout;
+
+  /**
+   * Creates a predictor for a field.
+   *
+   * @param layout Field layout with the tag poses, blue origin
+   */
+  public CropWindowPredictor(AprilTagFieldLayout layout) {
+    this.layout = layout;
+  }
+
+  /**
+   * Predicts the crop window.
+   *
+   * @param robotPose Field pose of the robot when the next frames are captured
+   * @param yawRateRadPerSec Robot yaw rate, widens the window horizontally
+   * @param lookaheadSeconds Time the window has to stay valid
+   * @param cameraPoseRobotSpace Camera pose as forward, side and up in meters and roll, pitch and
+   *     yaw in degrees
+   * @param windowOut Array of four elements, filled with x min, x max, y min and y max
+   * @return False if no tag is expected in view, the window is then the full frame
+   */
+  public boolean predict(
+      Pose2d robotPose,
+      double yawRateRadPerSec,
+      double lookaheadSeconds,
+      double[] cameraPoseRobotSpace,
+      double[] windowOut) {
+    Pose3d cameraPose =
+        new Pose3d(robotPose)
+            .plus(
+                new Transform3d(
+                    cameraPoseRobotSpace[0],
+                    cameraPoseRobotSpace[1],
+                    cameraPoseRobotSpace[2],
+                    new Rotation3d(
+                        Units.degreesToRadians(cameraPoseRobotSpace[3]),
+                        Units.degreesToRadians(cameraPoseRobotSpace[4]),
+                        Units.degreesToRadians(cameraPoseRobotSpace[5]))));
+
+    double xMin = Double.POSITIVE_INFINITY;
+    double xMax = Double.NEGATIVE_INFINITY;
+    double yMin = Double.POSITIVE_INFINITY;
+    double yMax = Double.NEGATIVE_INFINITY;
+    for (AprilTag tag : layout.getTags()) {
+      Pose3d tagInCamera = tag.pose.relativeTo(cameraPose);
+      double depth = tagInCamera.getX();
+      if (depth < MIN_TAG_DEPTH) {
+        continue; // Behind or too close to the camera
+      }
+      double radius = Math.atan(TAG_HALF_DIAGONAL / depth);
+      double x = -Math.atan2(tagInCamera.getY(), depth) / (HORIZONTAL_FOV / 2.0);
+      double y = Math.atan2(tagInCamera.getZ(), depth) / (VERTICAL_FOV / 2.0);
+      double xRadius = radius / (HORIZONTAL_FOV / 2.0);
+      double yRadius = radius / (VERTICAL_FOV / 2.0);
+      if (x - xRadius > 1.0 || x + xRadius < -1.0 || y - yRadius > 1.0 || y + yRadius < -1.0) {
+        continue; // Outside the image
+      }
+      xMin = Math.min(xMin, x - xRadius);
+      xMax = Math.max(xMax, x + xRadius);
+      yMin = Math.min(yMin, y - yRadius);
+      yMax = Math.max(yMax, y + yRadius);
+    }
+
+    if (xMin > xMax) {
+      setFullFrame(windowOut);
+      return false;
+    }
+    // Turning moves every tag sideways in the image
+    double xMargin =
+        MARGIN + Math.abs(yawRateRadPerSec) * lookaheadSeconds / (HORIZONTAL_FOV / 2.0);
+    windowOut[0] = Math.max(-1.0, xMin - xMargin);
+    windowOut[1] = Math.min(1.0, xMax + xMargin);
+    windowOut[2] = Math.max(-1.0, yMin - MARGIN);
+    windowOut[3] = Math.min(1.0, yMax + MARGIN);
+    return true;
+  }
+
+  /** Fills the window with the full frame. */
+  public static void setFullFrame(double[] windowOut) {
+    windowOut[0] = -1.0;
+    windowOut[1] = 1.0;
+    windowOut[2] = -1.0;
+    windowOut[3] = 1.0;
+  }
+}
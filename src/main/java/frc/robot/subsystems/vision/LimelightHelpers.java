@@ -15,14 +15,20 @@ import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.networktables.DoubleArrayEntry;
+import edu.wpi.first.networktables.DoubleEntry;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringEntry;
+import edu.wpi.first.networktables.TimestampedDoubleArray;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class LimelightHelpers {
 
@@ -356,13 +362,97 @@ public class LimelightHelpers {
     }
   }
 
+  public static class PoseEstimate {
+    public Pose2d pose;
+    public double timestampSeconds;
+    public double latency;
+    public int tagCount;
+    public double tagSpan;
+    public double avgTagDist;
+    public double avgTagArea;
+
+    public PoseEstimate(
+        Pose2d pose,
+        double timestampSeconds,
+        double latency,
+        int tagCount,
+        double tagSpan,
+        double avgTagDist,
+        double avgTagArea) {
+      this.pose = pose;
+      this.timestampSeconds = timestampSeconds;
+      this.latency = latency;
+      this.tagCount = tagCount;
+      this.tagSpan = tagSpan;
+      this.avgTagDist = avgTagDist;
+      this.avgTagArea = avgTagArea;
+    }
+  }
+
+  /**
+   * Typed NetworkTables entries of one camera, created on first use and reused after, so reads and
+   * writes skip the table and entry lookups by name.
+   */
+  private static class CameraEntries {
+    private final NetworkTable table;
+    private final Map<String, DoubleEntry> doubleEntries = new ConcurrentHashMap<>();
+    private final Map<String, DoubleArrayEntry> doubleArrayEntries = new ConcurrentHashMap<>();
+    private final Map<String, StringEntry> stringEntries = new ConcurrentHashMap<>();
+
+    private CameraEntries(String tableName) {
+      table = NetworkTableInstance.getDefault().getTable(tableName);
+    }
+
+    private DoubleEntry getDoubleEntry(String entryName) {
+      DoubleEntry entry = doubleEntries.get(entryName);
+      if (entry == null) {
+        entry = table.getDoubleTopic(entryName).getEntry(0.0);
+        DoubleEntry existing = doubleEntries.putIfAbsent(entryName, entry);
+        if (existing != null) {
+          entry.close();
+          entry = existing;
+        }
+      }
+      return entry;
+    }
+
+    private DoubleArrayEntry getDoubleArrayEntry(String entryName) {
+      DoubleArrayEntry entry = doubleArrayEntries.get(entryName);
+      if (entry == null) {
+        entry = table.getDoubleArrayTopic(entryName).getEntry(EMPTY_ARRAY);
+        DoubleArrayEntry existing = doubleArrayEntries.putIfAbsent(entryName, entry);
+        if (existing != null) {
+          entry.close();
+          entry = existing;
+        }
+      }
+      return entry;
+    }
+
+    private StringEntry getStringEntry(String entryName) {
+      StringEntry entry = stringEntries.get(entryName);
+      if (entry == null) {
+        entry = table.getStringTopic(entryName).getEntry("");
+        StringEntry existing = stringEntries.putIfAbsent(entryName, entry);
+        if (existing != null) {
+          entry.close();
+          entry = existing;
+        }
+      }
+      return entry;
+    }
+  }
+
+  private static final double[] EMPTY_ARRAY = new double[0];
+  private static final Map<String, CameraEntries> cameraEntries = new ConcurrentHashMap<>();
+
   private static ObjectMapper mapper;
 
   /** Print JSON Parse time to the console in milliseconds */
   static boolean profileJSON = false;
 
   static final String sanitizeName(String name) {
-    if (name == "" || name == null) {
+    if (name == null || name.isEmpty()) {
       return "limelight";
     }
     return name;
@@ -391,8 +481,46 @@ public class LimelightHelpers {
     return new Pose2d(tran2d, r2d);
   }
 
+  private static double extractBotPoseEntry(double[] inData, int position) {
+    if (inData.length < position + 1) {
+      return 0;
+    }
+    return inData[position];
+  }
+
+  private static PoseEstimate getBotPoseEstimate(String limelightName, String entryName) {
+    TimestampedDoubleArray poseArray =
+        getCameraEntries(limelightName).getDoubleArrayEntry(entryName).getAtomic();
+    return toPoseEstimate(poseArray.value, poseArray.timestamp);
+  }
+
+  /**
+   * Converts a botpose array to a pose estimate.
+   *
+   * @param poseArray Value of a botpose entry
+   * @param changeMicros Time the value arrived in microseconds, e.g. from getLastChange()
+   */
+  public static PoseEstimate toPoseEstimate(double[] poseArray, long changeMicros) {
+    if (poseArray.length < 6) {
+      return new PoseEstimate(new Pose2d(), 0, 0, 0, 0, 0, 0);
+    }
+    var pose = toPose2D(poseArray);
+    double latency = extractBotPoseEntry(poseArray, 6);
+    int tagCount = (int) extractBotPoseEntry(poseArray, 7);
+    double tagSpan = extractBotPoseEntry(poseArray, 8);
+    double tagDist = extractBotPoseEntry(poseArray, 9);
+    double tagArea = extractBotPoseEntry(poseArray, 10);
+    // The change time is in microseconds, LL latency in milliseconds
+    var timestamp = (changeMicros / 1000000.0) - (latency / 1000.0);
+    return new PoseEstimate(pose, timestamp, latency, tagCount, tagSpan, tagDist, tagArea);
+  }
+
+  private static CameraEntries getCameraEntries(String tableName) {
+    return cameraEntries.computeIfAbsent(sanitizeName(tableName), CameraEntries::new);
+  }
+
   public static NetworkTable getLimelightNTTable(String tableName) {
-    return NetworkTableInstance.getDefault().getTable(sanitizeName(tableName));
+    return getCameraEntries(tableName).table;
   }
 
   public static NetworkTableEntry getLimelightNTTableEntry(String tableName, String entryName) {
@@ -400,23 +528,23 @@ public class LimelightHelpers {
   }
 
   public static double getLimelightNTDouble(String tableName, String entryName) {
-    return getLimelightNTTableEntry(tableName, entryName).getDouble(0.0);
+    return getCameraEntries(tableName).getDoubleEntry(entryName).get();
   }
 
   public static void setLimelightNTDouble(String tableName, String entryName, double val) {
-    getLimelightNTTableEntry(tableName, entryName).setDouble(val);
+    getCameraEntries(tableName).getDoubleEntry(entryName).set(val);
   }
 
   public static void setLimelightNTDoubleArray(String tableName, String entryName, double[] val) {
-    getLimelightNTTableEntry(tableName, entryName).setDoubleArray(val);
+    getCameraEntries(tableName).getDoubleArrayEntry(entryName).set(val);
   }
 
   public static double[] getLimelightNTDoubleArray(String tableName, String entryName) {
-    return getLimelightNTTableEntry(tableName, entryName).getDoubleArray(new double[0]);
+    return getCameraEntries(tableName).getDoubleArrayEntry(entryName).get();
   }
 
   public static String getLimelightNTString(String tableName, String entryName) {
-    return getLimelightNTTableEntry(tableName, entryName).getString("");
+    return getCameraEntries(tableName).getStringEntry(entryName).get();
   }
 
   public static URL getLimelightURLString(String tableName, String request) {
@@ -613,6 +741,18 @@ public class LimelightHelpers {
     return toPose2D(result);
   }
 
+  /**
+   * Gets the Pose2d and timestamp for use with the drive pose estimator (addVisionMeasurement) when
+   * you are on the BLUE alliance. The timestamp is when the frame was captured, on the same clock
+   * as Timer.getFPGATimestamp().
+   *
+   * @param limelightName
+   * @return
+   */
+  public static PoseEstimate getBotPoseEstimate_wpiBlue(String limelightName) {
+    return getBotPoseEstimate(limelightName, "botpose_wpiblue");
+  }
+
   public static boolean getTV(String limelightName) {
     return 1.0 == getLimelightNTDouble(limelightName, "tv");
   }
@@ -720,7 +860,7 @@ public class LimelightHelpers {
     try {
       HttpURLConnection connection = (HttpURLConnection) url.openConnection();
       connection.setRequestMethod("GET");
-      if (snapshotName != null && snapshotName != "") {
+      if (snapshotName != null && !snapshotName.isEmpty()) {
         connection.setRequestProperty("snapname", snapshotName);
       }
 
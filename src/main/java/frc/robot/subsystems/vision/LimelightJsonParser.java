@@ -0,0 +1,194 @@
+package frc.robot.subsystems.vision;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+
+/**
+ * Streaming parser for the Limelight JSON results dump that reads only the fields we use.
+ *
+ * <p>{@link LimelightHelpers#getLatestResults(String)} binds the whole dump into a tree of new
+ * objects, with arrays for every target type. This parser walks the tokens once, skips everything
+ * else, and writes into a {@link Results} the caller keeps, so a parse allocates little beyond the
+ * token parser itself. {@link VisionIOLimelight} parses every dump with it on its worker thread.
+ */
+public class LimelightJsonParser {
+  /** Fiducials past this count are skipped. */
+  public static final int MAX_FIDUCIALS = 16;
+
+  private static final int MAX_BOTPOSE_LENGTH = 11;
+
+  /** Fields of one results dump. Reused between parses, only read it after a parse returns. */
+  public static class Results {
+    public boolean valid;
+    public double pipelineId;
+    public double latencyPipelineMs;
+    public double latencyCaptureMs;
+    public double timestampLimelightPublish;
+    public double timestampRioCapture;
+
+    public final double[] botposeWpiBlue = new double[MAX_BOTPOSE_LENGTH];
+    public int botposeWpiBlueLength;
+    public int botposeTagCount;
+    public double botposeAvgTagDistance;
+    public double botposeAvgTagArea; // Percent of the image
+
+    public int fiducialCount;
+    public final int[] fiducialIds = new int[MAX_FIDUCIALS];
+    public final double[] fiducialTx = new double[MAX_FIDUCIALS];
+    public final double[] fiducialTy = new double[MAX_FIDUCIALS];
+    public final double[] fiducialTa = new double[MAX_FIDUCIALS];
+
+    public double parseMillis;
+
+    private void clear() {
+      valid = false;
+      pipelineId = 0.0;
+      latencyPipelineMs = 0.0;
+      latencyCaptureMs = 0.0;
+      timestampLimelightPublish = 0.0;
+      timestampRioCapture = 0.0;
+      botposeWpiBlueLength = 0;
+      botposeTagCount = 0;
+      botposeAvgTagDistance = 0.0;
+      botposeAvgTagArea = 0.0;
+      fiducialCount = 0;
+    }
+  }
+
+  private final JsonFactory factory = new JsonFactory();
+
+  /**
+   * Parses a results dump.
+   *
+   * @param json Value of the Limelight's "json" entry
+   * @param resultsOut Results to overwrite, cleared if the dump cannot be parsed
+   * @return Whether the dump was parsed
+   */
+  public boolean parse(String json, Results resultsOut) {
+    long start = System.nanoTime();
+    resultsOut.clear();
+    boolean parsed = false;
+    try (JsonParser parser = factory.createParser(json)) {
+      if (parser.nextToken() == JsonToken.START_OBJECT) {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String field = parser.getCurrentName();
+          parser.nextToken();
+          if (field.equals("Results")) {
+            parseResults(parser, resultsOut);
+          } else {
+            parser.skipChildren();
+          }
+        }
+        parsed = true;
+      }
+    } catch (IOException e) {
+      // Malformed or truncated dump, reported through the return value
+    }
+    if (!parsed) {
+      resultsOut.clear();
+    }
+    resultsOut.parseMillis = (System.nanoTime() - start) * .000001;
+    return parsed;
+  }
+
+  private static void parseResults(JsonParser parser, Results results) throws IOException {
+    if (parser.currentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (field) {
+        case "v":
+          results.valid = value == JsonToken.VALUE_TRUE || parser.getValueAsInt() != 0;
+          break;
+        case "pID":
+          results.pipelineId = parser.getValueAsDouble();
+          break;
+        case "tl":
+          results.latencyPipelineMs = parser.getValueAsDouble();
+          break;
+        case "cl":
+          results.latencyCaptureMs = parser.getValueAsDouble();
+          break;
+        case "ts":
+          results.timestampLimelightPublish = parser.getValueAsDouble();
+          break;
+        case "ts_rio":
+          results.timestampRioCapture = parser.getValueAsDouble();
+          break;
+        case "botpose_wpiblue":
+          results.botposeWpiBlueLength = readArray(parser, results.botposeWpiBlue);
+          break;
+        case "botpose_tagcount":
+          results.botposeTagCount = parser.getValueAsInt();
+          break;
+        case "botpose_avgdist":
+          results.botposeAvgTagDistance = parser.getValueAsDouble();
+          break;
+        case "botpose_avgarea":
+          results.botposeAvgTagArea = parser.getValueAsDouble();
+          break;
+        case "Fiducial":
+          parseFiducials(parser, results);
+          break;
+        default:
+          parser.skipChildren();
+          break;
+      }
+    }
+  }
+
+  private static void parseFiducials(JsonParser parser, Results results) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return;
+    }
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      if (results.fiducialCount == MAX_FIDUCIALS) {
+        parser.skipChildren();
+        continue;
+      }
+      int index = results.fiducialCount++;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        switch (field) {
+          case "fID":
+            results.fiducialIds[index] = parser.getValueAsInt();
+            break;
+          case "tx":
+            results.fiducialTx[index] = parser.getValueAsDouble();
+            break;
+          case "ty":
+            results.fiducialTy[index] = parser.getValueAsDouble();
+            break;
+          case "ta":
+            results.fiducialTa[index] = parser.getValueAsDouble();
+            break;
+          default:
+            parser.skipChildren();
+            break;
+        }
+      }
+    }
+  }
+
+  /** Reads a number array into the given array, returns the number of values stored. */
+  private static int readArray(JsonParser parser, double[] valuesOut) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return 0;
+    }
+    int count = 0;
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (count < valuesOut.length) {
+        valuesOut[count++] = parser.getValueAsDouble();
+      }
+    }
+    return count;
+  }
+}
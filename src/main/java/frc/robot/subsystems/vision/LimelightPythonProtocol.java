@@ -0,0 +1,188 @@
+package frc.robot.subsystems.vision;
+
+/**
+ * Versioned layout of the double arrays exchanged with the SnapScript on a Limelight.
+ *
+ * <p>The robot writes a {@link Request} to "llrobot" with its pose and what it is looking for, and
+ * the script writes a {@link Response} to "llpython" for every frame it processes, with results it
+ * already reduced on the camera. Both arrays start with the protocol version and a sequence number,
+ * so a script running another version is ignored instead of misread, and gaps in the response
+ * sequence show frames that were lost on the way. Every value is a double, integers are stored
+ * exactly up to 2^53.
+ *
+ * <p>The script has to be changed with this class. Bump {@link #VERSION} whenever a layout changes.
+ */
+public final class LimelightPythonProtocol {
+  public static final int VERSION = 1;
+
+  // Request layout
+  private static final int REQUEST_VERSION = 0;
+  private static final int REQUEST_SEQUENCE = 1;
+  private static final int REQUEST_TIMESTAMP = 2;
+  private static final int REQUEST_POSE_X = 3;
+  private static final int REQUEST_POSE_Y = 4;
+  private static final int REQUEST_POSE_THETA = 5;
+  private static final int REQUEST_AIMING = 6;
+  private static final int REQUEST_HINT_TAG_ID = 7;
+  public static final int REQUEST_LENGTH = 8;
+
+  // Response layout
+  private static final int RESPONSE_VERSION = 0;
+  private static final int RESPONSE_SEQUENCE = 1;
+  private static final int RESPONSE_REQUEST_SEQUENCE = 2;
+  private static final int RESPONSE_LATENCY_MS = 3;
+  private static final int RESPONSE_FLAGS = 4;
+  private static final int RESPONSE_POSE_X = 5;
+  private static final int RESPONSE_POSE_Y = 6;
+  private static final int RESPONSE_POSE_THETA = 7;
+  private static final int RESPONSE_TAG_COUNT = 8;
+  private static final int RESPONSE_NOTE_TX = 9;
+  private static final int RESPONSE_NOTE_TY = 10;
+  private static final int RESPONSE_NOTE_AREA = 11;
+  public static final int RESPONSE_LENGTH = 12;
+
+  // Response flags
+  private static final int FLAG_POSE_VALID = 1;
+  private static final int FLAG_NOTE_VALID = 2;
+
+  /** What the robot sends to the script. Reused, fields are overwritten by every decode. */
+  public static class Request {
+    public long sequence;
+    public double timestampSeconds; // FPGA time the request was made
+    public double poseX; // Meters, field relative with the blue origin
+    public double poseY;
+    public double poseThetaRad;
+    public boolean aiming;
+    public int hintTagId; // Tag the robot is aiming at, -1 for none
+  }
+
+  /** What the script returns for one frame. Reused, fields are overwritten by every decode. */
+  public static class Response {
+    public long sequence; // Counts every frame the script processed
+    public long requestSequence; // Sequence of the request the script used
+    public double latencyMs; // Capture to result, measured on the camera
+
+    // Multi-tag pose solved on the camera, field relative with the blue origin
+    public boolean poseValid;
+    public double poseX;
+    public double poseY;
+    public double poseThetaRad;
+    public int tagCount;
+
+    // Largest note in view, in degrees from the crosshair and percent of the image
+    public boolean noteValid;
+    public double noteTx;
+    public double noteTy;
+    public double noteArea;
+  }
+
+  /** Counts the responses missing between the ones received, from their sequence numbers. */
+  public static class SequenceTracker {
+    private long lastSequence = -1;
+    private long receivedCount = 0;
+    private long lostCount = 0;
+
+    /**
+     * Records a received response.
+     *
+     * @param sequence Sequence number of the response
+     * @return Number of responses lost since the last one received
+     */
+    public long record(long sequence) {
+      long lost = 0;
+      // A sequence that goes back means the script restarted, which is not a loss
+      if (lastSequence >= 0 && sequence > lastSequence) {
+        lost = sequence - lastSequence - 1;
+      }
+      lastSequence = sequence;
+      receivedCount++;
+      lostCount += lost;
+      return lost;
+    }
+
+    public long getReceivedCount() {
+      return receivedCount;
+    }
+
+    public long getLostCount() {
+      return lostCount;
+    }
+  }
+
+  private LimelightPythonProtocol() {}
+
+  /** Writes a request into an array of at least {@link #REQUEST_LENGTH} values. */
+  public static void encodeRequest(Request request, double[] out) {
+    out[REQUEST_VERSION] = VERSION;
+    out[REQUEST_SEQUENCE] = request.sequence;
+    out[REQUEST_TIMESTAMP] = request.timestampSeconds;
+    out[REQUEST_POSE_X] = request.poseX;
+    out[REQUEST_POSE_Y] = request.poseY;
+    out[REQUEST_POSE_THETA] = request.poseThetaRad;
+    out[REQUEST_AIMING] = request.aiming ? 1.0 : 0.0;
+    out[REQUEST_HINT_TAG_ID] = request.hintTagId;
+  }
+
+  /**
+   * Reads a request.
+   *
+   * @return False if the array is too short or of another version, the request is then unchanged
+   */
+  public static boolean decodeRequest(double[] in, Request out) {
+    if (in.length < REQUEST_LENGTH || in[REQUEST_VERSION] != VERSION) {
+      return false;
+    }
+    out.sequence = (long) in[REQUEST_SEQUENCE];
+    out.timestampSeconds = in[REQUEST_TIMESTAMP];
+    out.poseX = in[REQUEST_POSE_X];
+    out.poseY = in[REQUEST_POSE_Y];
+    out.poseThetaRad = in[REQUEST_POSE_THETA];
+    out.aiming = in[REQUEST_AIMING] != 0.0;
+    out.hintTagId = (int) in[REQUEST_HINT_TAG_ID];
+    return true;
+  }
+
+  /** Writes a response into an array of at least {@link #RESPONSE_LENGTH} values. */
+  public static void encodeResponse(Response response, double[] out) {
+    int flags =
+        (response.poseValid ? FLAG_POSE_VALID : 0) | (response.noteValid ? FLAG_NOTE_VALID : 0);
+    out[RESPONSE_VERSION] = VERSION;
+    out[RESPONSE_SEQUENCE] = response.sequence;
+    out[RESPONSE_REQUEST_SEQUENCE] = response.requestSequence;
+    out[RESPONSE_LATENCY_MS] = response.latencyMs;
+    out[RESPONSE_FLAGS] = flags;
+    out[RESPONSE_POSE_X] = response.poseX;
+    out[RESPONSE_POSE_Y] = response.poseY;
+    out[RESPONSE_POSE_THETA] = response.poseThetaRad;
+    out[RESPONSE_TAG_COUNT] = response.tagCount;
+    out[RESPONSE_NOTE_TX] = response.noteTx;
+    out[RESPONSE_NOTE_TY] = response.noteTy;
+    out[RESPONSE_NOTE_AREA] = response.noteArea;
+  }
+
+  /**
+   * Reads a response from an array, starting at an offset so packed responses can be read in place.
+   *
+   * @return False if the values are too short or of another version, the response is then
+   *     unchanged
+   */
+  public static boolean decodeResponse(double[] in, int offset, Response out) {
+    if (in.length - offset < RESPONSE_LENGTH || in[offset + RESPONSE_VERSION] != VERSION) {
+      return false;
+    }
+    int flags = (int) in[offset + RESPONSE_FLAGS];
+    out.sequence = (long) in[offset + RESPONSE_SEQUENCE];
+    out.requestSequence = (long) in[offset + RESPONSE_REQUEST_SEQUENCE];
+    out.latencyMs = in[offset + RESPONSE_LATENCY_MS];
+    out.poseValid = (flags & FLAG_POSE_VALID) != 0;
+    out.poseX = in[offset + RESPONSE_POSE_X];
+    out.poseY = in[offset + RESPONSE_POSE_Y];
+    out.poseThetaRad = in[offset + RESPONSE_POSE_THETA];
+    out.tagCount = (int) in[offset + RESPONSE_TAG_COUNT];
+    out.noteValid = (flags & FLAG_NOTE_VALID) != 0;
+    out.noteTx = in[offset + RESPONSE_NOTE_TX];
+    out.noteTy = in[offset + RESPONSE_NOTE_TY];
+    out.noteArea = in[offset + RESPONSE_NOTE_AREA];
+    return true;
+  }
+}
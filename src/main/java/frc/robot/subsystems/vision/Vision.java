@@ -1,12 +1,68 @@
 package frc.robot.subsystems.vision;
 
-import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import frc.lib.SpikeSubsystem;
+import frc.lib.TimingHistogram;
+import frc.robot.Constants.PoseEstimatorConstants;
+import frc.robot.subsystems.drive.Drive;
+import java.util.Arrays;
+import org.littletonrobotics.junction.Logger;
 
-public class Vision extends SubsystemBase {
+public class Vision extends SpikeSubsystem {
   private static final double ANGULAR_INTEGRAL_LIMIT = 5;
 
-  private final VisionIO m_visionIO;
-  private final VisionIOInputsAutoLogged m_visionInputs = new VisionIOInputsAutoLogged();
+  private static final double GATE_RATE_PERIOD = 1.0; // Seconds
+
+  // Crop windows have to stay valid until the frames after the next update are captured
+  private static final double CROP_LOOKAHEAD = 0.1; // Seconds
+  // Updates with frames but no tags before a camera falls back to the full frame, and how long
+  private static final int MAX_CROP_MISSES = 3;
+  private static final double FULL_FRAME_HOLD = 0.5; // Seconds
+
+  private final Drive m_drive;
+  private final VisionIO[] m_cameraIOs;
+  private final VisionIOInputsAutoLogged[] m_cameraInputs;
+  private final String[] m_cameraLogKeys;
+  private final VisionIOInputsAutoLogged m_visionInputs; // Aiming camera
+  private final int[] m_mergeCursors; // Next frame of every camera to fuse
+
+  // Gate results of every camera, per frame this cycle and counted over the rate window
+  private final VisionGate m_gate;
+  private final int[][] m_frameRejections; // Fixed length, -1 past the camera's fresh frames
+  private final int[] m_acceptedCounts;
+  private final int[] m_rejectedCounts;
+  private double m_gateRateWindowStart = 0.0;
+
+  // Crop window control of every camera
+  private final CropWindowPredictor m_cropPredictor =
+      new CropWindowPredictor(AprilTagFields.k2024Crescendo.loadAprilTagLayoutField());
+  private final double[][] m_cropWindows;
+  private final int[] m_cropMisses;
+  private final double[] m_fullFrameUntil;
+  private final double[] m_lastHeartbeats;
+  private final double[] m_lastHeartbeatTimes;
+
+  // Aiming request, the mode of every camera, and the frame latency of every mode over the rate
+  // window
+  private boolean m_aimingRequested = false;
+  private final VisionMode[] m_modes;
+  private final TimingHistogram[] m_modeLatencyHistograms =
+      new TimingHistogram[VisionMode.values().length];
+
+  // SnapScript exchange, the request is shared by every camera
+  private final LimelightPythonProtocol.Request m_pythonRequest =
+      new LimelightPythonProtocol.Request();
+  private final double[] m_pythonRequestValues =
+      new double[LimelightPythonProtocol.REQUEST_LENGTH];
+  private final LimelightPythonProtocol.Response m_pythonResponse =
+      new LimelightPythonProtocol.Response();
+  private final LimelightPythonProtocol.SequenceTracker[] m_pythonTrackers;
+  private final int[] m_pythonMalformedCounts;
+
   private double m_angularP;
   private double m_angularI;
   private double m_angularD;
@@ -16,12 +72,50 @@ public class Vision extends SubsystemBase {
   private double m_angularIntegralError;
   private double m_angularVelOutput;
 
-  public Vision() {
+  /**
+   * Creates the vision subsystem. Every camera reads its frames on its own thread, the main loop
+   * only merges them.
+   *
+   * @param drive Drive to send the pose estimates to
+   * @param cameraIOs IO of every camera, the first one is used for aiming
+   */
+  public Vision(Drive drive, VisionIO... cameraIOs) {
+    super(UpdateRate.HZ_25);
     m_angularP = 0.005;
     m_angularI = 0.0;
     m_angularD = 0.0001;
-    // Initialize the ColorSensorIORevV3 object
-    m_visionIO = new VisionIOLimelight("limelight");
+    m_drive = drive;
+    m_cameraIOs = cameraIOs;
+    m_cameraInputs = new VisionIOInputsAutoLogged[cameraIOs.length];
+    m_cameraLogKeys = new String[cameraIOs.length];
+    for (int i = 0; i < cameraIOs.length; i++) {
+      m_cameraInputs[i] = new VisionIOInputsAutoLogged();
+      m_cameraLogKeys[i] = "Vision/Camera" + i;
+    }
+    m_visionInputs = m_cameraInputs[0];
+    m_mergeCursors = new int[cameraIOs.length];
+    m_modes = new VisionMode[cameraIOs.length];
+    Arrays.fill(m_modes, VisionMode.IDLE);
+    m_gate = new VisionGate(drive);
+    m_frameRejections = new int[cameraIOs.length][VisionIO.MAX_FRAMES_PER_UPDATE];
+    m_acceptedCounts = new int[cameraIOs.length];
+    m_rejectedCounts = new int[cameraIOs.length];
+    m_cropWindows = new double[cameraIOs.length][4];
+    m_cropMisses = new int[cameraIOs.length];
+    m_fullFrameUntil = new double[cameraIOs.length];
+    m_lastHeartbeats = new double[cameraIOs.length];
+    m_lastHeartbeatTimes = new double[cameraIOs.length];
+    for (double[] window : m_cropWindows) {
+      CropWindowPredictor.setFullFrame(window);
+    }
+    for (int i = 0; i < m_modeLatencyHistograms.length; i++) {
+      m_modeLatencyHistograms[i] = new TimingHistogram(1000, 200);
+    }
+    m_pythonTrackers = new LimelightPythonProtocol.SequenceTracker[cameraIOs.length];
+    for (int i = 0; i < cameraIOs.length; i++) {
+      m_pythonTrackers[i] = new LimelightPythonProtocol.SequenceTracker();
+    }
+    m_pythonMalformedCounts = new int[cameraIOs.length];
   }
 
   public boolean seesTarget() {
@@ -46,9 +140,23 @@ public class Vision extends SubsystemBase {
     return m_angularVelOutput;
   }
 
+  /**
+   * Requests the aiming pipeline on the aiming camera, e.g. while an aiming command runs. The other
+   * cameras keep localizing. While aiming, vision updates every cycle so the aim controller runs at
+   * the rate the command reads it.
+   */
+  public void setAiming(boolean aiming) {
+    m_aimingRequested = aiming;
+    setFullRate(aiming);
+  }
+
   @Override
-  public void periodic() {
-    m_visionIO.updateInputs(m_visionInputs);
+  protected void subsystemPeriodic() {
+    for (int i = 0; i < m_cameraIOs.length; i++) {
+      m_cameraIOs[i].updateInputs(m_cameraInputs[i]);
+      Logger.processInputs(m_cameraLogKeys[i], m_cameraInputs[i]);
+    }
+    updateModes();
 
     // Save the last error
     m_angularLastError = m_angularError;
@@ -78,6 +186,241 @@ public class Vision extends SubsystemBase {
       m_angularIntegralError = 0.0d;
     }
 
-    // Logger.processInputs("Vision", m_visionInputs);
+    for (int[] rejections : m_frameRejections) {
+      Arrays.fill(rejections, -1);
+    }
+    updatePoseEstimates();
+    logGateResults();
+    for (int i = 0; i < m_cameraIOs.length; i++) {
+      updateCropWindow(i);
+    }
+    updatePythonScripts();
+  }
+
+  /** Sends the new frames of every camera to the drive, merged into one stream oldest first. */
+  private void updatePoseEstimates() {
+    Arrays.fill(m_mergeCursors, 0);
+    while (true) {
+      int nextCamera = -1;
+      double nextTimestamp = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < m_cameraInputs.length; i++) {
+        int frame = m_mergeCursors[i];
+        if (frame < m_cameraInputs[i].freshFrameCount
+            && m_cameraInputs[i].frameTimestamps[frame] < nextTimestamp) {
+          nextCamera = i;
+          nextTimestamp = m_cameraInputs[i].frameTimestamps[frame];
+        }
+      }
+      if (nextCamera < 0) {
+        return;
+      }
+      updatePoseEstimate(nextCamera, m_mergeCursors[nextCamera]++);
+    }
+  }
+
+  /**
+   * Sends a frame's AprilTag pose estimate to the drive if it passes the gate, with a trust based
+   * on its quality.
+   */
+  private void updatePoseEstimate(int camera, int frame) {
+    VisionIOInputsAutoLogged inputs = m_cameraInputs[camera];
+    VisionGate.Rejection rejection = m_gate.check(inputs, frame);
+    m_frameRejections[camera][frame] = rejection.ordinal();
+    if (rejection != VisionGate.Rejection.ACCEPTED) {
+      m_rejectedCounts[camera]++;
+      return;
+    }
+    m_acceptedCounts[camera]++;
+
+    int tagCount = inputs.frameTagCounts[frame];
+    double distance = inputs.frameAvgTagDistances[frame];
+    double latencyMs = inputs.frameLatenciesMs[frame];
+    // Standard deviations grow with distance squared and latency and shrink with the tag count
+    double trustFactor =
+        distance
+            * distance
+            / tagCount
+            * (1.0 + latencyMs / 1000.0 * PoseEstimatorConstants.VISION_LATENCY_STD_DEV_SCALE);
+    double xyStdDev = PoseEstimatorConstants.VISION_XY_STD_DEV_COEFFICIENT * trustFactor;
+    // A single tag gives a poor rotation, so only the translation is used
+    double thetaStdDev =
+        tagCount > 1
+            ? PoseEstimatorConstants.VISION_THETA_STD_DEV_COEFFICIENT * trustFactor
+            : Double.POSITIVE_INFINITY;
+    m_drive.addVisionMeasurement(
+        inputs.framePoses[frame], inputs.frameTimestamps[frame], xyStdDev, thetaStdDev);
+  }
+
+  /**
+   * Selects every camera's mode from the robot state and records the frame latency of the mode each
+   * camera is actually running.
+   */
+  private void updateModes() {
+    for (int i = 0; i < m_cameraIOs.length; i++) {
+      VisionMode mode;
+      if (DriverStation.isDisabled()) {
+        mode = VisionMode.IDLE;
+      } else if (m_aimingRequested && i == 0) {
+        mode = VisionMode.AIMING;
+      } else {
+        mode = VisionMode.LOCALIZATION;
+      }
+      m_modes[i] = mode;
+      m_cameraIOs[i].setMode(mode);
+
+      VisionIOInputsAutoLogged inputs = m_cameraInputs[i];
+      VisionMode runningMode = VisionMode.fromPipelineIndex(inputs.pipelineIndex);
+      if (runningMode != null) {
+        for (int frame = 0; frame < inputs.freshFrameCount; frame++) {
+          m_modeLatencyHistograms[runningMode.ordinal()].record(
+              (long) (inputs.frameLatenciesMs[frame] * 1000.0));
+        }
+      }
+      Logger.recordOutput(m_cameraLogKeys[i] + "/Mode", mode.name());
+    }
+  }
+
+  /**
+   * Reads the SnapScript responses of every camera and sends the scripts a new request with the
+   * robot pose and, while aiming, the tag in view. Logs the latest results and the responses lost
+   * on the way.
+   */
+  private void updatePythonScripts() {
+    for (int i = 0; i < m_cameraInputs.length; i++) {
+      VisionIOInputsAutoLogged inputs = m_cameraInputs[i];
+      String prefix = m_cameraLogKeys[i] + "/Python";
+      LimelightPythonProtocol.SequenceTracker tracker = m_pythonTrackers[i];
+      boolean received = false;
+      for (int index = 0; index < inputs.pythonResponseCount; index++) {
+        int offset = index * LimelightPythonProtocol.RESPONSE_LENGTH;
+        if (LimelightPythonProtocol.decodeResponse(
+            inputs.pythonResponses, offset, m_pythonResponse)) {
+          tracker.record(m_pythonResponse.sequence);
+          received = true;
+        } else {
+          m_pythonMalformedCounts[i]++;
+        }
+      }
+      Logger.recordOutput(prefix + "/ReceivedCount", tracker.getReceivedCount());
+      Logger.recordOutput(prefix + "/LostCount", tracker.getLostCount());
+      Logger.recordOutput(prefix + "/MalformedCount", m_pythonMalformedCounts[i]);
+      if (!received) {
+        continue;
+      }
+
+      // Only the newest response matters for the results
+      LimelightPythonProtocol.Response response = m_pythonResponse;
+      Logger.recordOutput(prefix + "/LatencyMs", response.latencyMs);
+      Logger.recordOutput(
+          prefix + "/RequestAge", m_pythonRequest.sequence - response.requestSequence);
+      Logger.recordOutput(prefix + "/PoseValid", response.poseValid);
+      Logger.recordOutput(prefix + "/TagCount", response.tagCount);
+      if (response.poseValid) {
+        Logger.recordOutput(
+            prefix + "/Pose",
+            new Pose2d(response.poseX, response.poseY, new Rotation2d(response.poseThetaRad)));
+      }
+      Logger.recordOutput(prefix + "/NoteValid", response.noteValid);
+      Logger.recordOutput(prefix + "/NoteTx", response.noteTx);
+      Logger.recordOutput(prefix + "/NoteTy", response.noteTy);
+      Logger.recordOutput(prefix + "/NoteArea", response.noteArea);
+    }
+
+    Pose2d pose = m_drive.getPose();
+    m_pythonRequest.sequence++;
+    m_pythonRequest.timestampSeconds = Timer.getFPGATimestamp();
+    m_pythonRequest.poseX = pose.getX();
+    m_pythonRequest.poseY = pose.getY();
+    m_pythonRequest.poseThetaRad = pose.getRotation().getRadians();
+    m_pythonRequest.aiming = m_aimingRequested;
+    m_pythonRequest.hintTagId =
+        m_aimingRequested && m_visionInputs.seesTarget ? (int) m_visionInputs.aprilTagId : -1;
+    LimelightPythonProtocol.encodeRequest(m_pythonRequest, m_pythonRequestValues);
+    for (VisionIO io : m_cameraIOs) {
+      io.setPythonRequest(m_pythonRequestValues);
+    }
+  }
+
+  /**
+   * Crops an aiming camera to the tags predicted in view, or to the full frame if none are
+   * predicted or the camera stopped seeing tags while cropped. Cameras in the other modes use the
+   * full frame, localization needs every tag in view. Logs the window and the camera's frame rate.
+   */
+  private void updateCropWindow(int camera) {
+    VisionIOInputsAutoLogged inputs = m_cameraInputs[camera];
+    double[] window = m_cropWindows[camera];
+    double now = Timer.getFPGATimestamp();
+
+    boolean cropped = window[0] > -1.0 || window[1] < 1.0 || window[2] > -1.0 || window[3] < 1.0;
+    if (cropped && inputs.freshFrameCount > 0) {
+      boolean sawTags = false;
+      for (int frame = 0; frame < inputs.freshFrameCount; frame++) {
+        sawTags |= inputs.frameTagCounts[frame] > 0;
+      }
+      m_cropMisses[camera] = sawTags ? 0 : m_cropMisses[camera] + 1;
+      if (m_cropMisses[camera] >= MAX_CROP_MISSES) {
+        m_cropMisses[camera] = 0;
+        m_fullFrameUntil[camera] = now + FULL_FRAME_HOLD;
+      }
+    }
+
+    if (m_modes[camera] != VisionMode.AIMING) {
+      m_cropMisses[camera] = 0;
+      CropWindowPredictor.setFullFrame(window);
+    } else if (now < m_fullFrameUntil[camera] || inputs.cameraPoseRobotSpace.length < 6) {
+      CropWindowPredictor.setFullFrame(window);
+    } else {
+      var state = m_drive.getState();
+      m_cropPredictor.predict(
+          state.pose(),
+          state.yawVelocityRadPerSec(),
+          CROP_LOOKAHEAD,
+          inputs.cameraPoseRobotSpace,
+          window);
+    }
+    m_cameraIOs[camera].setCropWindow(window[0], window[1], window[2], window[3]);
+
+    Logger.recordOutput(m_cameraLogKeys[camera] + "/CropWindow", window);
+
+    // The heartbeat counts processed frames. It is 0 until the camera connects and restarts with
+    // the camera, the first heartbeat after either only seeds the rate.
+    double lastHeartbeat = m_lastHeartbeats[camera];
+    if (lastHeartbeat > 0.0 && inputs.heartbeat >= lastHeartbeat) {
+      double fps = (inputs.heartbeat - lastHeartbeat) / (now - m_lastHeartbeatTimes[camera]);
+      Logger.recordOutput(m_cameraLogKeys[camera] + "/Fps", fps);
+    }
+    m_lastHeartbeats[camera] = inputs.heartbeat;
+    m_lastHeartbeatTimes[camera] = now;
+  }
+
+  /** Logs this cycle's gate results, and the accept and reject rates about once per second. */
+  private void logGateResults() {
+    for (int i = 0; i < m_cameraInputs.length; i++) {
+      Logger.recordOutput(m_cameraLogKeys[i] + "/RejectionReasons", m_frameRejections[i]);
+      Logger.recordOutput(
+          m_cameraLogKeys[i] + "/RejectionReasonCount", m_cameraInputs[i].freshFrameCount);
+    }
+
+    double now = Timer.getFPGATimestamp();
+    double window = now - m_gateRateWindowStart;
+    if (window < GATE_RATE_PERIOD) {
+      return;
+    }
+    m_gateRateWindowStart = now;
+    for (int i = 0; i < m_cameraInputs.length; i++) {
+      Logger.recordOutput(m_cameraLogKeys[i] + "/AcceptedPerSec", m_acceptedCounts[i] / window);
+      Logger.recordOutput(m_cameraLogKeys[i] + "/RejectedPerSec", m_rejectedCounts[i] / window);
+      m_acceptedCounts[i] = 0;
+      m_rejectedCounts[i] = 0;
+    }
+    for (VisionMode mode : VisionMode.values()) {
+      TimingHistogram histogram = m_modeLatencyHistograms[mode.ordinal()];
+      String prefix = "Vision/Modes/" + mode.name();
+      Logger.recordOutput(prefix + "/Frames", histogram.getCount());
+      Logger.recordOutput(prefix + "/LatencyP50Ms", histogram.getPercentile(0.5) / 1000.0);
+      Logger.recordOutput(prefix + "/LatencyP99Ms", histogram.getPercentile(0.99) / 1000.0);
+      Logger.recordOutput(prefix + "/LatencyMaxMs", histogram.getMax() / 1000.0);
+      histogram.reset();
+    }
   }
 }
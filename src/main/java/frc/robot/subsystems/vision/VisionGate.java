@@ -0,0 +1,90 @@
+package frc.robot.subsystems.vision;
+
+import frc.robot.subsystems.drive.Drive;
+
+/**
+ * Staged checks that keep implausible AprilTag frames out of the pose estimator.
+ *
+ * <p>Long range and glancing tags can make the botpose jump meters in one frame. The stages run
+ * cheapest first and stop at the first one that fails, whose {@link Rejection} is returned. Only
+ * the odometry residual needs the drive, and it reads the pose history into a reused array, so
+ * checking a frame never allocates. Main thread only.
+ */
+public class VisionGate {
+  // Tag quality, areas are in percent of the image
+  private static final double MAX_TAG_DISTANCE = 6.0; // Meters
+  private static final double MAX_SINGLE_TAG_DISTANCE = 4.0; // Meters
+  private static final double MIN_TAG_AREA = 0.05;
+  private static final double MIN_SINGLE_TAG_AREA = 0.1;
+  private static final double MAX_LATENCY_MS = 200.0;
+
+  // Field bounds with the blue origin, poses outside by more than the margin are rejected
+  private static final double FIELD_LENGTH = 16.541; // Meters
+  private static final double FIELD_WIDTH = 8.211; // Meters
+  private static final double FIELD_MARGIN = 0.5; // Meters
+
+  // A single tag may only move the estimate this far, several tags are trusted to correct it
+  private static final double MAX_SINGLE_TAG_RESIDUAL = 1.0; // Meters
+
+  /** Result of the gate, logged by its ordinal. Stages run in this order. */
+  public enum Rejection {
+    ACCEPTED,
+    NO_TAGS,
+    LATENCY,
+    TAG_DISTANCE,
+    TAG_AREA,
+    FIELD_BOUNDS,
+    OLDER_THAN_HISTORY,
+    ODOMETRY_RESIDUAL
+  }
+
+  private final Drive drive;
+  private final double[] poseAtFrame = new double[3];
+
+  public VisionGate(Drive drive) {
+    this.drive = drive;
+  }
+
+  /**
+   * Checks one frame.
+   *
+   * @param inputs Inputs of the camera
+   * @param frame Index of the frame in the inputs
+   * @return {@link Rejection#ACCEPTED} or the first stage that failed
+   */
+  public Rejection check(VisionIO.VisionIOInputs inputs, int frame) {
+    int tagCount = inputs.frameTagCounts[frame];
+    if (tagCount == 0) {
+      return Rejection.NO_TAGS;
+    }
+    if (inputs.frameLatenciesMs[frame] > MAX_LATENCY_MS) {
+      return Rejection.LATENCY;
+    }
+
+    boolean singleTag = tagCount == 1;
+    if (inputs.frameAvgTagDistances[frame]
+        > (singleTag ? MAX_SINGLE_TAG_DISTANCE : MAX_TAG_DISTANCE)) {
+      return Rejection.TAG_DISTANCE;
+    }
+    if (inputs.frameAvgTagAreas[frame] < (singleTag ? MIN_SINGLE_TAG_AREA : MIN_TAG_AREA)) {
+      return Rejection.TAG_AREA;
+    }
+
+    double x = inputs.framePoses[frame].getX();
+    double y = inputs.framePoses[frame].getY();
+    if (x < -FIELD_MARGIN
+        || x > FIELD_LENGTH + FIELD_MARGIN
+        || y < -FIELD_MARGIN
+        || y > FIELD_WIDTH + FIELD_MARGIN) {
+      return Rejection.FIELD_BOUNDS;
+    }
+
+    if (!drive.getPoseAt(inputs.frameTimestamps[frame], poseAtFrame)) {
+      return Rejection.OLDER_THAN_HISTORY;
+    }
+    if (singleTag && Math.hypot(x - poseAtFrame[0], y - poseAtFrame[1]) > MAX_SINGLE_TAG_RESIDUAL) {
+      return Rejection.ODOMETRY_RESIDUAL;
+    }
+    return Rejection.ACCEPTED;
+  }
+}
@@ -1,8 +1,11 @@
 package frc.robot.subsystems.vision;
 
+import edu.wpi.first.math.geometry.Pose2d;
 import org.littletonrobotics.junction.AutoLog;
 
 public interface VisionIO {
+  /** Most frames an update may return, older frames are dropped. */
+  public static final int MAX_FRAMES_PER_UPDATE = 32;
 
   @AutoLog
   public static class VisionIOInputs {
@@ -10,7 +13,44 @@ public interface VisionIO {
     public double aprilTagId = 0;
     public double tX = 0.0;
     public double tY = 0.0;
+    public int pipelineIndex = 0; // Pipeline the camera is running
+    public double pipelineLatencyMs = 0.0;
+    public double heartbeat = 0.0; // Increments once per processed frame
+    // Crop window last sent to the camera, xMin, xMax, yMin and yMax from -1 to 1
+    public double[] appliedCropWindow = new double[] {-1.0, 1.0, -1.0, 1.0};
+
+    // Camera pose as configured on the camera, forward, side and up in meters and roll, pitch and
+    // yaw in degrees
+    public double[] cameraPoseRobotSpace = new double[0];
+
+    // AprilTag pose estimates of every frame received since the last update, oldest first, field
+    // relative with the blue origin
+    public Pose2d[] framePoses = new Pose2d[0];
+    public double[] frameTimestamps = new double[0];
+    public double[] frameLatenciesMs = new double[0];
+    public int[] frameTagCounts = new int[0];
+    public double[] frameAvgTagDistances = new double[0];
+    public double[] frameAvgTagAreas = new double[0]; // Percent of the image
+
+    public int freshFrameCount = 0;
+    public int droppedFrameCount = 0; // Frames lost because the buffer was full
+    public int malformedFrameCount = 0; // Results dumps that could not be parsed
+    public double staleFrameAgeSeconds = 0.0; // Time since the newest frame was received
+
+    // Raw SnapScript responses received since the last update, oldest first, packed back to back
+    // with LimelightPythonProtocol.RESPONSE_LENGTH values each
+    public double[] pythonResponses = new double[0];
+    public int pythonResponseCount = 0;
   }
 
   public default void updateInputs(VisionIOInputs inputs) {}
+
+  /** Switches the camera's pipeline and LEDs. */
+  public default void setMode(VisionMode mode) {}
+
+  /** Sends a request encoded with {@link LimelightPythonProtocol} to the camera's SnapScript. */
+  public default void setPythonRequest(double[] request) {}
+
+  /** Limits detection to a window of the image, in normalized coordinates from -1 to 1. */
+  public default void setCropWindow(double xMin, double xMax, double yMin, double yMax) {}
 }
@@ -1,18 +1,289 @@
 package frc.robot.subsystems.vision;
 
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
+import edu.wpi.first.networktables.DoubleSubscriber;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.StringSubscriber;
+import edu.wpi.first.networktables.TimestampedString;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limelight IO that turns every pose estimate frame into a result on a worker thread.
+ *
+ * <p>The worker wakes when a new results dump arrives, drains the subscriber's queue and parses
+ * each dump with a {@link LimelightJsonParser}, so the parsing stays off the main loop. Results are
+ * handed over through two batches: the worker fills one while the other is either waiting to be
+ * read or being read, and the two swap through atomic references, so neither side ever blocks. The
+ * main loop copies a ready batch into the inputs, which are logged, so replay sees the same frames
+ * without the worker.
+ *
+ * <p>The targeting values only matter as their latest value and are read on the main loop.
+ */
 public class VisionIOLimelight implements VisionIO {
+  private static final int FRAME_QUEUE_DEPTH = 20; // Frames kept by NT until the worker drains them
+  private static final long IDLE_WAIT_NANOS = 100000000;
+  private static final long HANDOFF_RETRY_NANOS = 1000000;
+
+  /** Frames processed by the worker and not yet read, oldest first. */
+  private static class FrameBatch {
+    private final Pose2d[] poses = new Pose2d[MAX_FRAMES_PER_UPDATE];
+    private final double[] timestamps = new double[MAX_FRAMES_PER_UPDATE];
+    private final double[] latenciesMs = new double[MAX_FRAMES_PER_UPDATE];
+    private final int[] tagCounts = new int[MAX_FRAMES_PER_UPDATE];
+    private final double[] avgTagDistances = new double[MAX_FRAMES_PER_UPDATE];
+    private final double[] avgTagAreas = new double[MAX_FRAMES_PER_UPDATE];
+    private int count = 0;
+    private int droppedCount = 0;
+    private int malformedCount = 0;
+    private double newestArrivalTimestamp = 0.0;
+
+    private void clear() {
+      count = 0;
+      droppedCount = 0;
+      malformedCount = 0;
+    }
+  }
 
-  private final String m_limelightName;
+  private final DoubleSubscriber tvSubscriber;
+  private final DoubleSubscriber txSubscriber;
+  private final DoubleSubscriber tySubscriber;
+  private final DoubleSubscriber tidSubscriber;
+  private final DoubleSubscriber pipelineSubscriber;
+  private final DoubleSubscriber tlSubscriber;
+  private final DoubleSubscriber heartbeatSubscriber;
+  private final DoubleArraySubscriber cameraPoseSubscriber;
+  private final StringSubscriber jsonSubscriber;
+  private final DoubleArraySubscriber pythonSubscriber;
 
+  // Batch being filled, worker thread only
+  private FrameBatch fillingBatch = new FrameBatch();
+  private final LimelightJsonParser jsonParser = new LimelightJsonParser();
+  private final LimelightJsonParser.Results jsonResults = new LimelightJsonParser.Results();
+  // Full batch waiting for the main loop, and empty batch returned by it
+  private final AtomicReference<FrameBatch> readyBatch = new AtomicReference<>();
+  private final AtomicReference<FrameBatch> freeBatch = new AtomicReference<>(new FrameBatch());
+  private final Thread worker;
+
+  private final String limelightName;
+  private double lastFrameTimestamp; // Main thread only
+  private final double[] cropWindow = {-1.0, 1.0, -1.0, 1.0}; // Last sent, main thread only
+  private VisionMode mode = null; // Last sent, main thread only
+
+  /**
+   * Creates the IO of a camera at the location set in its web UI.
+   *
+   * @param limelightName Name of the camera's table
+   */
   public VisionIOLimelight(String limelightName) {
-    this.m_limelightName = limelightName;
+    this.limelightName = limelightName;
+    NetworkTable table = LimelightHelpers.getLimelightNTTable(limelightName);
+    tvSubscriber = table.getDoubleTopic("tv").subscribe(0.0);
+    txSubscriber = table.getDoubleTopic("tx").subscribe(0.0);
+    tySubscriber = table.getDoubleTopic("ty").subscribe(0.0);
+    tidSubscriber = table.getDoubleTopic("tid").subscribe(0.0);
+    pipelineSubscriber = table.getDoubleTopic("getpipe").subscribe(0.0);
+    tlSubscriber = table.getDoubleTopic("tl").subscribe(0.0);
+    heartbeatSubscriber = table.getDoubleTopic("hb").subscribe(0.0);
+    cameraPoseSubscriber =
+        table.getDoubleArrayTopic("camerapose_robotspace").subscribe(new double[0]);
+    jsonSubscriber =
+        table
+            .getStringTopic("json")
+            .subscribe(
+                "",
+                PubSubOption.keepDuplicates(true),
+                PubSubOption.pollStorage(FRAME_QUEUE_DEPTH));
+    // Responses are small and read on the main loop, the queue keeps the sequence gap-free
+    pythonSubscriber =
+        table
+            .getDoubleArrayTopic("llpython")
+            .subscribe(
+                new double[0],
+                PubSubOption.keepDuplicates(true),
+                PubSubOption.pollStorage(FRAME_QUEUE_DEPTH));
+    lastFrameTimestamp = Timer.getFPGATimestamp();
+
+    worker = new Thread(this::runWorker, "VisionWorker-" + limelightName);
+    worker.setDaemon(true);
+    worker.start();
+    NetworkTableInstance.getDefault()
+        .addListener(
+            jsonSubscriber,
+            EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+            event -> LockSupport.unpark(worker));
+  }
+
+  /**
+   * Creates the IO of a camera at the given location, which overrides the one set in its web UI.
+   *
+   * @param limelightName Name of the camera's table
+   * @param robotToCamera Camera pose relative to the robot center
+   */
+  public VisionIOLimelight(String limelightName, Transform3d robotToCamera) {
+    this(limelightName);
+    LimelightHelpers.setCameraPose_RobotSpace(
+        limelightName,
+        robotToCamera.getX(),
+        robotToCamera.getY(),
+        robotToCamera.getZ(),
+        Units.radiansToDegrees(robotToCamera.getRotation().getX()),
+        Units.radiansToDegrees(robotToCamera.getRotation().getY()),
+        Units.radiansToDegrees(robotToCamera.getRotation().getZ()));
   }
 
   @Override
   public void updateInputs(VisionIOInputs inputs) {
-    inputs.seesTarget = LimelightHelpers.getTV(m_limelightName);
-    inputs.tX = LimelightHelpers.getTX(m_limelightName);
-    inputs.tY = LimelightHelpers.getTY(m_limelightName);
-    inputs.aprilTagId = LimelightHelpers.getFiducialID(m_limelightName);
+    inputs.seesTarget = tvSubscriber.get() == 1.0;
+    inputs.tX = txSubscriber.get();
+    inputs.tY = tySubscriber.get();
+    inputs.aprilTagId = tidSubscriber.get();
+    inputs.pipelineIndex = (int) pipelineSubscriber.get();
+    inputs.pipelineLatencyMs = tlSubscriber.get();
+    inputs.heartbeat = heartbeatSubscriber.get();
+    System.arraycopy(cropWindow, 0, inputs.appliedCropWindow, 0, cropWindow.length);
+    inputs.cameraPoseRobotSpace = cameraPoseSubscriber.get();
+
+    FrameBatch batch = readyBatch.getAndSet(null);
+    int count = batch != null ? batch.count : 0;
+    inputs.framePoses = new Pose2d[count];
+    inputs.frameTimestamps = new double[count];
+    inputs.frameLatenciesMs = new double[count];
+    inputs.frameTagCounts = new int[count];
+    inputs.frameAvgTagDistances = new double[count];
+    inputs.frameAvgTagAreas = new double[count];
+    inputs.droppedFrameCount = 0;
+    inputs.malformedFrameCount = 0;
+    if (batch != null) {
+      System.arraycopy(batch.poses, 0, inputs.framePoses, 0, count);
+      System.arraycopy(batch.timestamps, 0, inputs.frameTimestamps, 0, count);
+      System.arraycopy(batch.latenciesMs, 0, inputs.frameLatenciesMs, 0, count);
+      System.arraycopy(batch.tagCounts, 0, inputs.frameTagCounts, 0, count);
+      System.arraycopy(batch.avgTagDistances, 0, inputs.frameAvgTagDistances, 0, count);
+      System.arraycopy(batch.avgTagAreas, 0, inputs.frameAvgTagAreas, 0, count);
+      inputs.droppedFrameCount = batch.droppedCount;
+      inputs.malformedFrameCount = batch.malformedCount;
+      lastFrameTimestamp = batch.newestArrivalTimestamp;
+      batch.clear();
+      freeBatch.set(batch);
+    }
+    inputs.freshFrameCount = count;
+    inputs.staleFrameAgeSeconds = Timer.getFPGATimestamp() - lastFrameTimestamp;
+
+    // Responses of another length are kept zero filled, so they fail the version check
+    double[][] responses = pythonSubscriber.readQueueValues();
+    int stride = LimelightPythonProtocol.RESPONSE_LENGTH;
+    inputs.pythonResponses = new double[responses.length * stride];
+    for (int i = 0; i < responses.length; i++) {
+      if (responses[i].length == stride) {
+        System.arraycopy(responses[i], 0, inputs.pythonResponses, i * stride, stride);
+      }
+    }
+    inputs.pythonResponseCount = responses.length;
+  }
+
+  @Override
+  public void setMode(VisionMode mode) {
+    if (mode == this.mode) {
+      return;
+    }
+    this.mode = mode;
+    LimelightHelpers.setPipelineIndex(limelightName, mode.pipelineIndex);
+    LimelightHelpers.setLimelightNTDouble(limelightName, "ledMode", mode.ledMode);
+  }
+
+  @Override
+  public void setPythonRequest(double[] request) {
+    LimelightHelpers.setPythonScriptData(limelightName, request);
+  }
+
+  @Override
+  public void setCropWindow(double xMin, double xMax, double yMin, double yMax) {
+    if (xMin == cropWindow[0]
+        && xMax == cropWindow[1]
+        && yMin == cropWindow[2]
+        && yMax == cropWindow[3]) {
+      return;
+    }
+    cropWindow[0] = xMin;
+    cropWindow[1] = xMax;
+    cropWindow[2] = yMin;
+    cropWindow[3] = yMax;
+    LimelightHelpers.setCropWindow(limelightName, xMin, xMax, yMin, yMax);
+  }
+
+  private void runWorker() {
+    while (true) {
+      // NT timestamps are in microseconds on the FPGA clock
+      for (TimestampedString frame : jsonSubscriber.readQueue()) {
+        addFrame(frame);
+      }
+      boolean handedOff = fillingBatch.count == 0 || tryHandOff();
+      LockSupport.parkNanos(handedOff ? IDLE_WAIT_NANOS : HANDOFF_RETRY_NANOS);
+    }
+  }
+
+  /** Parses a frame into the filling batch, dropping the oldest frame if it is full. */
+  private void addFrame(TimestampedString frame) {
+    FrameBatch batch = fillingBatch;
+    if (!jsonParser.parse(frame.value, jsonResults)) {
+      batch.malformedCount++;
+      return;
+    }
+    if (batch.count == MAX_FRAMES_PER_UPDATE) {
+      int last = MAX_FRAMES_PER_UPDATE - 1;
+      System.arraycopy(batch.poses, 1, batch.poses, 0, last);
+      System.arraycopy(batch.timestamps, 1, batch.timestamps, 0, last);
+      System.arraycopy(batch.latenciesMs, 1, batch.latenciesMs, 0, last);
+      System.arraycopy(batch.tagCounts, 1, batch.tagCounts, 0, last);
+      System.arraycopy(batch.avgTagDistances, 1, batch.avgTagDistances, 0, last);
+      System.arraycopy(batch.avgTagAreas, 1, batch.avgTagAreas, 0, last);
+      batch.count--;
+      batch.droppedCount++;
+    }
+    LimelightJsonParser.Results results = jsonResults;
+    // Same values the botpose_wpiblue entry carries, the latency is pipeline plus capture
+    double latencyMs = results.latencyPipelineMs + results.latencyCaptureMs;
+    double arrivalTimestamp = frame.timestamp / 1000000.0;
+    int index = batch.count++;
+    batch.poses[index] =
+        results.botposeWpiBlueLength >= 6
+            ? new Pose2d(
+                results.botposeWpiBlue[0],
+                results.botposeWpiBlue[1],
+                Rotation2d.fromDegrees(results.botposeWpiBlue[5]))
+            : new Pose2d();
+    batch.timestamps[index] = arrivalTimestamp - latencyMs / 1000.0;
+    batch.latenciesMs[index] = latencyMs;
+    batch.tagCounts[index] = results.botposeTagCount;
+    batch.avgTagDistances[index] = results.botposeAvgTagDistance;
+    batch.avgTagAreas[index] = results.botposeAvgTagArea;
+    batch.newestArrivalTimestamp = arrivalTimestamp;
+  }
+
+  /**
+   * Publishes the filling batch if the last one has been read and returned. Otherwise the worker
+   * keeps filling the same batch and tries again shortly.
+   */
+  private boolean tryHandOff() {
+    if (readyBatch.get() != null) {
+      return false;
+    }
+    FrameBatch next = freeBatch.getAndSet(null);
+    if (next == null) {
+      return false; // The main loop is still copying the last batch
+    }
+    readyBatch.set(fillingBatch);
+    fillingBatch = next;
+    return true;
   }
 }
@@ -0,0 +1,35 @@
+package frc.robot.subsystems.vision;
+
+/**
+ * What a camera is used for, which selects its pipeline and LEDs.
+ *
+ * <p>The pipelines have to be set up on every camera at these indexes.
+ */
+public enum VisionMode {
+  /** Disabled, a throttled AprilTag pipeline that keeps the camera cool but still localizes. */
+  IDLE(0, 1),
+  /** Driving, a low resolution AprilTag pipeline at the highest frame rate. */
+  LOCALIZATION(1, 1),
+  /** Aiming at a target, a high resolution pipeline with the LEDs set by the pipeline. */
+  AIMING(2, 0);
+
+  /** Pipeline index on the camera. */
+  public final int pipelineIndex;
+  /** Limelight LED mode, 0 for pipeline control and 1 for off. */
+  public final int ledMode;
+
+  VisionMode(int pipelineIndex, int ledMode) {
+    this.pipelineIndex = pipelineIndex;
+    this.ledMode = ledMode;
+  }
+
+  /** Returns the mode that uses a pipeline, or null if none does. */
+  public static VisionMode fromPipelineIndex(int pipelineIndex) {
+    for (VisionMode mode : values()) {
+      if (mode.pipelineIndex == pipelineIndex) {
+        return mode;
+      }
+    }
+    return null;
+  }
+}
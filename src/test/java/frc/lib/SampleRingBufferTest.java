@@ -0,0 +1,89 @@
+package frc.lib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.junit.jupiter.api.Test;
+
+class SampleRingBufferTest {
+  private final SampleRingBuffer buffer = new SampleRingBuffer(8);
+  private final double[] values = new double[8];
+  private final long[] timestamps = new long[8];
+
+  @Test
+  void drainsUpToTheEndSequence() {
+    for (int sequence = 0; sequence < 5; sequence++) {
+      buffer.offer(sequence * 10.0, sequence * 100L, sequence);
+    }
+
+    assertEquals(3, buffer.drain(values, timestamps, 3));
+    assertEquals(20.0, values[2]);
+    assertEquals(200L, timestamps[2]);
+    assertEquals(2, buffer.drain(values, timestamps, 5));
+    assertEquals(30.0, values[0]);
+    assertEquals(0, buffer.drain(values, timestamps, 5));
+  }
+
+  @Test
+  void skippedCyclesKeepTheOtherSamplesInPlace() {
+    // A sensor updating every third cycle
+    buffer.offer(1.0, 10L, 0);
+    buffer.offer(2.0, 40L, 3);
+    buffer.offer(3.0, 70L, 6);
+
+    assertEquals(1, buffer.drain(values, timestamps, 3));
+    assertEquals(1.0, values[0]);
+    assertEquals(1, buffer.drain(values, timestamps, 6));
+    assertEquals(2.0, values[0]);
+    assertEquals(1, buffer.drain(values, timestamps, 7));
+    assertEquals(3.0, values[0]);
+  }
+
+  @Test
+  void drainsTwoBuffersOverTheSameCycles() {
+    // The second buffer was registered two cycles later
+    var other = new SampleRingBuffer(8);
+    for (int sequence = 0; sequence < 6; sequence++) {
+      buffer.offer(sequence, sequence, sequence);
+      if (sequence >= 2) {
+        other.offer(sequence, sequence, sequence);
+      }
+    }
+
+    long start = Math.max(buffer.getOldestSequence(), other.getOldestSequence());
+    assertEquals(2, start);
+    assertEquals(3, buffer.drain(values, timestamps, start, 5));
+    assertEquals(2.0, values[0]);
+    assertEquals(3, other.drain(values, timestamps, start, 5));
+    assertEquals(2.0, values[0]);
+    assertEquals(5, buffer.getOldestSequence());
+  }
+
+  @Test
+  void emptyBufferHasNoOldestSequence() {
+    assertEquals(Long.MAX_VALUE, buffer.getOldestSequence());
+    buffer.offer(1.0, 0L, 4);
+    // Never discards samples of cycles that are not drained yet
+    assertEquals(0, buffer.drain(values, timestamps, Long.MAX_VALUE, 4));
+    assertEquals(4, buffer.getOldestSequence());
+  }
+
+  @Test
+  void dropsSamplesWhenFull() {
+    for (int sequence = 0; sequence < buffer.capacity(); sequence++) {
+      buffer.offer(sequence, sequence, sequence);
+    }
+    assertFalse(buffer.offer(-1.0, -1L, buffer.capacity()));
+
+    assertEquals(buffer.capacity(), buffer.drain(values, timestamps, Long.MAX_VALUE));
+    assertEquals(buffer.capacity() - 1.0, values[buffer.capacity() - 1]);
+  }
+
+  @Test
+  void peeksTheNewestValue() {
+    assertEquals(Double.NaN, buffer.peekLatest());
+    buffer.offer(1.0, 0L, 0);
+    buffer.offer(2.0, 0L, 1);
+    assertEquals(2.0, buffer.peekLatest());
+  }
+}
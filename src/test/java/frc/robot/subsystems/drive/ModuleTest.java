@@ -0,0 +1,89 @@
+package frc.robot.subsystems.drive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+
+class ModuleTest {
+  private static final double EPSILON = 1E-9;
+  private static final double WHEEL_CIRCUMFERENCE = 2.0 * 0.0508 * Math.PI;
+  private static final double SAMPLE_PERIOD = 1.0 / Module.ODOMETRY_FREQUENCY;
+  private static final int SAMPLES_PER_CYCLE = 5;
+
+  /** Drives at one rotation per second while turning at one radian per second. */
+  private static class FakeModuleIO implements ModuleIO {
+    private int sampleIndex = 0;
+
+    @Override
+    public void updateInputs(ModuleIOInputs inputs) {
+      // Reuses the arrays like ModuleIOTalonFX does while the count is unchanged
+      if (inputs.odometryDriveTimestamps.length != SAMPLES_PER_CYCLE) {
+        inputs.odometryDriveTimestamps = new double[SAMPLES_PER_CYCLE];
+        inputs.odometryDrivePositionsRotations = new double[SAMPLES_PER_CYCLE];
+        inputs.odometryTurnTimestamps = new double[SAMPLES_PER_CYCLE];
+        inputs.odometryTurnPositionsRad = new double[SAMPLES_PER_CYCLE];
+      }
+      for (int i = 0; i < SAMPLES_PER_CYCLE; i++) {
+        double timestamp = sampleIndex++ * SAMPLE_PERIOD;
+        inputs.odometryDriveTimestamps[i] = timestamp;
+        inputs.odometryDrivePositionsRotations[i] = timestamp;
+        inputs.odometryTurnTimestamps[i] = timestamp;
+        inputs.odometryTurnPositionsRad[i] = timestamp;
+      }
+    }
+  }
+
+  private final Module module = new Module(new FakeModuleIO(), 0);
+
+  @Test
+  void interpolatesAcrossCycles() {
+    runCycle();
+    runCycle();
+
+    // Between the last sample of the first cycle and the first sample of the second one
+    double timestamp = (SAMPLES_PER_CYCLE - 0.5) * SAMPLE_PERIOD;
+    assertEquals(
+        timestamp * WHEEL_CIRCUMFERENCE, module.getOdometryPositionMetersAt(timestamp), EPSILON);
+    assertEquals(timestamp, module.getOdometryAngleRadAt(timestamp), EPSILON);
+  }
+
+  @Test
+  void holdsOutsideOfTheSamples() {
+    runCycle();
+    double lastTimestamp = (SAMPLES_PER_CYCLE - 1) * SAMPLE_PERIOD;
+    assertEquals(0.0, module.getOdometryAngleRadAt(-1.0), EPSILON);
+    assertEquals(lastTimestamp, module.getOdometryAngleRadAt(1.0), EPSILON);
+  }
+
+  @Test
+  void storingSamplesDoesNotAllocate() {
+    var threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    int cycles = 10000;
+
+    runCycles(cycles); // Warmup, also allocates the input arrays once
+    long start = threadBean.getThreadAllocatedBytes(threadId);
+    runCycles(cycles);
+    long end = threadBean.getThreadAllocatedBytes(threadId);
+    // Bytes allocated by reading the counter itself
+    long overhead = threadBean.getThreadAllocatedBytes(threadId) - end;
+
+    assertEquals(0L, (end - start - overhead) / cycles, "Bytes allocated per cycle");
+  }
+
+  private void runCycles(int cycles) {
+    for (int i = 0; i < cycles; i++) {
+      runCycle();
+      double timestamp = module.getOdometryTimestamp(SAMPLES_PER_CYCLE - 1);
+      module.getOdometryPositionMetersAt(timestamp);
+      module.getOdometryAngleRadAt(timestamp);
+    }
+  }
+
+  private void runCycle() {
+    module.updateInputs();
+    module.periodic();
+  }
+}
@@ -0,0 +1,123 @@
+package frc.robot.subsystems.drive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.management.ThreadMXBean;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+
+class OdometryIntegratorTest {
+  private static final double EPSILON = 1E-9;
+  // Not square, so a mixed up x and y shows up
+  private static final Translation2d[] MODULE_TRANSLATIONS = {
+    new Translation2d(0.3, 0.25),
+    new Translation2d(0.3, -0.25),
+    new Translation2d(-0.3, 0.25),
+    new Translation2d(-0.3, -0.25)
+  };
+  private static final Pose2d START_POSE = new Pose2d(1.0, 2.0, new Rotation2d(0.5));
+
+  private final SwerveDriveKinematics kinematics = new SwerveDriveKinematics(MODULE_TRANSLATIONS);
+  private final OdometryIntegrator integrator = new OdometryIntegrator(MODULE_TRANSLATIONS);
+
+  @Test
+  void straight() {
+    checkAgainstKinematics(moduleDeltas(0.05, 0.0, 0.0));
+  }
+
+  @Test
+  void strafing() {
+    checkAgainstKinematics(moduleDeltas(0.0, -0.04, 0.0));
+  }
+
+  @Test
+  void pureRotation() {
+    checkAgainstKinematics(moduleDeltas(0.0, 0.0, 0.2));
+  }
+
+  @Test
+  void arc() {
+    checkAgainstKinematics(moduleDeltas(0.06, 0.02, -0.15));
+  }
+
+  @Test
+  void slippingWheel() {
+    // The wheels no longer agree on one motion, so both sides have to find the least squares twist
+    SwerveModulePosition[] deltas = moduleDeltas(0.06, 0.02, -0.15);
+    deltas[1] = new SwerveModulePosition(deltas[1].distanceMeters * 1.5, deltas[1].angle);
+    checkAgainstKinematics(deltas);
+  }
+
+  @Test
+  void integrationDoesNotAllocate() {
+    var threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    SwerveModulePosition[] deltas = moduleDeltas(0.06, 0.02, -0.15);
+    double[] wheelDeltasMeters = new double[deltas.length];
+    double[] wheelAnglesRad = new double[deltas.length];
+    for (int i = 0; i < deltas.length; i++) {
+      wheelDeltasMeters[i] = deltas[i].distanceMeters;
+      wheelAnglesRad[i] = deltas[i].angle.getRadians();
+    }
+    double[] pose = new double[3];
+    int samples = 10000;
+
+    integrate(wheelDeltasMeters, wheelAnglesRad, pose, samples); // Warmup
+    long start = threadBean.getThreadAllocatedBytes(threadId);
+    integrate(wheelDeltasMeters, wheelAnglesRad, pose, samples);
+    long end = threadBean.getThreadAllocatedBytes(threadId);
+    // Bytes allocated by reading the counter itself
+    long overhead = threadBean.getThreadAllocatedBytes(threadId) - end;
+
+    assertEquals(0L, (end - start - overhead) / samples, "Bytes allocated per sample");
+  }
+
+  private void integrate(
+      double[] wheelDeltasMeters, double[] wheelAnglesRad, double[] pose, int samples) {
+    for (int i = 0; i < samples; i++) {
+      integrator.updateTwist(wheelDeltasMeters, wheelAnglesRad);
+      OdometryIntegrator.exp(
+          pose, integrator.getTwistDx(), integrator.getTwistDy(), integrator.getTwistDtheta());
+    }
+  }
+
+  /** Returns the wheel displacements of a robot relative twist. */
+  private SwerveModulePosition[] moduleDeltas(double dx, double dy, double dtheta) {
+    SwerveModuleState[] states = kinematics.toSwerveModuleStates(new ChassisSpeeds(dx, dy, dtheta));
+    SwerveModulePosition[] deltas = new SwerveModulePosition[states.length];
+    for (int i = 0; i < states.length; i++) {
+      deltas[i] = new SwerveModulePosition(states[i].speedMetersPerSecond, states[i].angle);
+    }
+    return deltas;
+  }
+
+  private void checkAgainstKinematics(SwerveModulePosition[] deltas) {
+    double[] wheelDeltasMeters = new double[deltas.length];
+    double[] wheelAnglesRad = new double[deltas.length];
+    for (int i = 0; i < deltas.length; i++) {
+      wheelDeltasMeters[i] = deltas[i].distanceMeters;
+      wheelAnglesRad[i] = deltas[i].angle.getRadians();
+    }
+    integrator.updateTwist(wheelDeltasMeters, wheelAnglesRad);
+    Twist2d expectedTwist = kinematics.toTwist2d(deltas);
+    assertEquals(expectedTwist.dx, integrator.getTwistDx(), EPSILON);
+    assertEquals(expectedTwist.dy, integrator.getTwistDy(), EPSILON);
+    assertEquals(expectedTwist.dtheta, integrator.getTwistDtheta(), EPSILON);
+
+    double[] pose = {START_POSE.getX(), START_POSE.getY(), START_POSE.getRotation().getRadians()};
+    OdometryIntegrator.exp(
+        pose, integrator.getTwistDx(), integrator.getTwistDy(), integrator.getTwistDtheta());
+    Pose2d expectedPose = START_POSE.exp(expectedTwist);
+    assertEquals(expectedPose.getX(), pose[0], EPSILON);
+    assertEquals(expectedPose.getY(), pose[1], EPSILON);
+    assertEquals(expectedPose.getRotation().getRadians(), pose[2], EPSILON);
+  }
+}
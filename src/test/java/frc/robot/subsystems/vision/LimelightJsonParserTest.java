@@ -0,0 +1,124 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.ThreadMXBean;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class LimelightJsonParserTest {
+  // Results dump of a camera seeing two tags, in the 2024 firmware format
+  private static final String RESULTS_JSON_RESOURCE = "/limelight/results.json";
+  private static final int BENCHMARK_ITERATIONS = 20000;
+
+  private static String json;
+
+  private final ObjectMapper mapper =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+  private final LimelightJsonParser parser = new LimelightJsonParser();
+  private final LimelightJsonParser.Results results = new LimelightJsonParser.Results();
+
+  @BeforeAll
+  static void loadJson() throws IOException {
+    try (InputStream stream =
+        LimelightJsonParserTest.class.getResourceAsStream(RESULTS_JSON_RESOURCE)) {
+      json = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  void matchesDataBinding() throws IOException {
+    LimelightHelpers.Results expected =
+        mapper.readValue(json, LimelightHelpers.LimelightResults.class).targetingResults;
+
+    assertTrue(parser.parse(json, results));
+    assertEquals(expected.valid, results.valid);
+    assertEquals(expected.pipelineID, results.pipelineId);
+    assertEquals(expected.latency_pipeline, results.latencyPipelineMs);
+    assertEquals(expected.latency_capture, results.latencyCaptureMs);
+    assertEquals(expected.timestamp_LIMELIGHT_publish, results.timestampLimelightPublish);
+    assertEquals(expected.timestamp_RIOFPGA_capture, results.timestampRioCapture);
+    assertArrayEquals(
+        expected.botpose_wpiblue,
+        Arrays.copyOf(results.botposeWpiBlue, results.botposeWpiBlueLength));
+
+    assertEquals(expected.targets_Fiducials.length, results.fiducialCount);
+    for (int i = 0; i < results.fiducialCount; i++) {
+      LimelightHelpers.LimelightTarget_Fiducial fiducial = expected.targets_Fiducials[i];
+      assertEquals((int) fiducial.fiducialID, results.fiducialIds[i]);
+      assertEquals(fiducial.tx, results.fiducialTx[i]);
+      assertEquals(fiducial.ty, results.fiducialTy[i]);
+      assertEquals(fiducial.ta, results.fiducialTa[i]);
+    }
+  }
+
+  @Test
+  void readsBotposeSummary() {
+    // These fields are not in LimelightHelpers' data binding, the values are the ones in the dump
+    assertTrue(parser.parse(json, results));
+    assertEquals(2, results.botposeTagCount);
+    assertEquals(2.7684, results.botposeAvgTagDistance);
+    assertEquals(0.2692, results.botposeAvgTagArea);
+  }
+
+  @Test
+  void clearsResultsOfMalformedDump() {
+    assertTrue(parser.parse(json, results));
+    assertFalse(parser.parse(json.substring(0, json.length() / 2), results));
+    assertFalse(results.valid);
+    assertEquals(0, results.botposeWpiBlueLength);
+    assertEquals(0, results.botposeTagCount);
+    assertEquals(0, results.fiducialCount);
+  }
+
+  /**
+   * Parses the dump repeatedly with both parsers and prints the average time and allocation per
+   * parse. Only the allocation is asserted, the time depends too much on the machine.
+   */
+  @Test
+  void allocatesLessThanDataBinding() throws IOException {
+    var threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long dataBindingBytes = 0;
+    long streamingBytes = 0;
+
+    // The first pass warms up both parsers
+    for (int pass = 0; pass < 2; pass++) {
+      long startNanos = System.nanoTime();
+      long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+        mapper.readValue(json, LimelightHelpers.LimelightResults.class);
+      }
+      long dataBindingNanos = System.nanoTime() - startNanos;
+      dataBindingBytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+      startNanos = System.nanoTime();
+      startBytes = threadBean.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+        parser.parse(json, results);
+      }
+      long streamingNanos = System.nanoTime() - startNanos;
+      streamingBytes = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+      if (pass == 1) {
+        System.out.printf(
+            "lljson per parse: data binding %.1f us %d bytes, streaming %.1f us %d bytes%n",
+            dataBindingNanos / 1000.0 / BENCHMARK_ITERATIONS,
+            dataBindingBytes / BENCHMARK_ITERATIONS,
+            streamingNanos / 1000.0 / BENCHMARK_ITERATIONS,
+            streamingBytes / BENCHMARK_ITERATIONS);
+      }
+    }
+    assertTrue(streamingBytes < dataBindingBytes);
+  }
+}
@@ -0,0 +1,135 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class LimelightPythonProtocolTest {
+  @Test
+  void requestRoundTrip() {
+    var request = new LimelightPythonProtocol.Request();
+    request.sequence = 123456789L;
+    request.timestampSeconds = 98.765;
+    request.poseX = 1.5;
+    request.poseY = -2.25;
+    request.poseThetaRad = 3.0;
+    request.aiming = true;
+    request.hintTagId = 7;
+
+    double[] values = new double[LimelightPythonProtocol.REQUEST_LENGTH];
+    LimelightPythonProtocol.encodeRequest(request, values);
+    var decoded = new LimelightPythonProtocol.Request();
+    assertTrue(LimelightPythonProtocol.decodeRequest(values, decoded));
+
+    assertEquals(request.sequence, decoded.sequence);
+    assertEquals(request.timestampSeconds, decoded.timestampSeconds);
+    assertEquals(request.poseX, decoded.poseX);
+    assertEquals(request.poseY, decoded.poseY);
+    assertEquals(request.poseThetaRad, decoded.poseThetaRad);
+    assertEquals(request.aiming, decoded.aiming);
+    assertEquals(request.hintTagId, decoded.hintTagId);
+  }
+
+  @Test
+  void responseRoundTripAtOffset() {
+    var response = newResponse(42);
+    int length = LimelightPythonProtocol.RESPONSE_LENGTH;
+    double[] packed = new double[2 * length];
+    double[] values = new double[length];
+    LimelightPythonProtocol.encodeResponse(response, values);
+    System.arraycopy(values, 0, packed, length, length);
+
+    var decoded = new LimelightPythonProtocol.Response();
+    assertTrue(LimelightPythonProtocol.decodeResponse(packed, length, decoded));
+
+    assertEquals(response.sequence, decoded.sequence);
+    assertEquals(response.requestSequence, decoded.requestSequence);
+    assertEquals(response.latencyMs, decoded.latencyMs);
+    assertEquals(response.poseValid, decoded.poseValid);
+    assertEquals(response.poseX, decoded.poseX);
+    assertEquals(response.poseY, decoded.poseY);
+    assertEquals(response.poseThetaRad, decoded.poseThetaRad);
+    assertEquals(response.tagCount, decoded.tagCount);
+    assertEquals(response.noteValid, decoded.noteValid);
+    assertEquals(response.noteTx, decoded.noteTx);
+    assertEquals(response.noteTy, decoded.noteTy);
+    assertEquals(response.noteArea, decoded.noteArea);
+  }
+
+  @Test
+  void rejectsOtherVersion() {
+    double[] request = new double[LimelightPythonProtocol.REQUEST_LENGTH];
+    LimelightPythonProtocol.encodeRequest(new LimelightPythonProtocol.Request(), request);
+    request[0] = LimelightPythonProtocol.VERSION + 1;
+    assertFalse(
+        LimelightPythonProtocol.decodeRequest(request, new LimelightPythonProtocol.Request()));
+
+    double[] response = new double[LimelightPythonProtocol.RESPONSE_LENGTH];
+    LimelightPythonProtocol.encodeResponse(newResponse(5), response);
+    response[0] = LimelightPythonProtocol.VERSION + 1;
+    var decoded = new LimelightPythonProtocol.Response();
+    assertFalse(LimelightPythonProtocol.decodeResponse(response, 0, decoded));
+    assertEquals(0, decoded.sequence, "A rejected response must leave the output unchanged");
+  }
+
+  @Test
+  void rejectsMalformedPayloads() {
+    var request = new LimelightPythonProtocol.Request();
+    assertFalse(LimelightPythonProtocol.decodeRequest(new double[0], request));
+    assertFalse(
+        LimelightPythonProtocol.decodeRequest(
+            new double[] {LimelightPythonProtocol.VERSION, 1.0}, request));
+
+    var response = new LimelightPythonProtocol.Response();
+    double[] values = new double[LimelightPythonProtocol.RESPONSE_LENGTH];
+    LimelightPythonProtocol.encodeResponse(newResponse(5), values);
+    assertFalse(LimelightPythonProtocol.decodeResponse(new double[0], 0, response));
+    assertFalse(
+        LimelightPythonProtocol.decodeResponse(
+            Arrays.copyOf(values, values.length - 1), 0, response));
+    assertFalse(LimelightPythonProtocol.decodeResponse(values, 1, response));
+    // The zero filled slot VisionIOLimelight stores for a response of the wrong length
+    assertFalse(LimelightPythonProtocol.decodeResponse(new double[values.length], 0, response));
+  }
+
+  @Test
+  void countsSequenceGapsAsLosses() {
+    var tracker = new LimelightPythonProtocol.SequenceTracker();
+    assertEquals(0, tracker.record(1));
+    assertEquals(0, tracker.record(2));
+    assertEquals(3, tracker.record(6));
+    assertEquals(0, tracker.record(7));
+    assertEquals(4, tracker.getReceivedCount());
+    assertEquals(3, tracker.getLostCount());
+  }
+
+  @Test
+  void restartIsNotALoss() {
+    var tracker = new LimelightPythonProtocol.SequenceTracker();
+    tracker.record(500);
+    assertEquals(0, tracker.record(1));
+    assertEquals(1, tracker.record(3));
+    assertEquals(3, tracker.getReceivedCount());
+    assertEquals(1, tracker.getLostCount());
+  }
+
+  private static LimelightPythonProtocol.Response newResponse(long sequence) {
+    var response = new LimelightPythonProtocol.Response();
+    response.sequence = sequence;
+    response.requestSequence = sequence - 2;
+    response.latencyMs = 23.5;
+    response.poseValid = true;
+    response.poseX = 4.0;
+    response.poseY = 5.5;
+    response.poseThetaRad = -1.25;
+    response.tagCount = 3;
+    response.noteValid = true;
+    response.noteTx = -12.0;
+    response.noteTy = 4.5;
+    response.noteArea = 0.75;
+    return response;
+  }
+}
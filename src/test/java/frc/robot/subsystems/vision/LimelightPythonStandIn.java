@@ -0,0 +1,69 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * Plays the camera side of {@link LimelightPythonProtocol} on a NetworkTables instance, so the
+ * exchange can be tested without a Limelight.
+ *
+ * <p>Every {@link #processFrame()} stands for one camera frame: it reads the latest request and
+ * answers with the requested pose as a solved multi-tag pose and no note, as a script with a
+ * perfect view of the field would. Every n-th response can be skipped, while still counting its
+ * sequence number, to check that losses are detected.
+ */
+class LimelightPythonStandIn implements AutoCloseable {
+  private static final double LATENCY_MS = 20.0;
+  private static final int TAG_COUNT = 2;
+
+  private final DoubleArraySubscriber requestSubscriber;
+  private final DoubleArrayPublisher responsePublisher;
+  private final int dropEveryNth;
+
+  private final LimelightPythonProtocol.Request request = new LimelightPythonProtocol.Request();
+  private final LimelightPythonProtocol.Response response = new LimelightPythonProtocol.Response();
+  private final double[] responseValues = new double[LimelightPythonProtocol.RESPONSE_LENGTH];
+  private boolean hasRequest = false;
+
+  /**
+   * Creates a stand-in.
+   *
+   * @param instance Instance the camera's table is on
+   * @param limelightName Name of the camera's table
+   * @param dropEveryNth Skips every n-th response, 0 to answer every frame
+   */
+  LimelightPythonStandIn(NetworkTableInstance instance, String limelightName, int dropEveryNth) {
+    this.dropEveryNth = dropEveryNth;
+    NetworkTable table = instance.getTable(limelightName);
+    requestSubscriber = table.getDoubleArrayTopic("llrobot").subscribe(new double[0]);
+    responsePublisher = table.getDoubleArrayTopic("llpython").publish();
+  }
+
+  /** Processes one camera frame, publishing a response unless it is one of the skipped ones. */
+  void processFrame() {
+    hasRequest |= LimelightPythonProtocol.decodeRequest(requestSubscriber.get(), request);
+    response.sequence++;
+    if (dropEveryNth > 0 && response.sequence % dropEveryNth == 0) {
+      return;
+    }
+
+    response.requestSequence = request.sequence;
+    response.latencyMs = LATENCY_MS;
+    response.poseValid = hasRequest;
+    response.poseX = request.poseX;
+    response.poseY = request.poseY;
+    response.poseThetaRad = request.poseThetaRad;
+    response.tagCount = hasRequest ? TAG_COUNT : 0;
+    response.noteValid = false;
+    LimelightPythonProtocol.encodeResponse(response, responseValues);
+    responsePublisher.set(responseValues);
+  }
+
+  @Override
+  public void close() {
+    requestSubscriber.close();
+    responsePublisher.close();
+  }
+}
@@ -0,0 +1,80 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LimelightPythonStandInTest {
+  private static final String LIMELIGHT_NAME = "limelight";
+  private static final int FRAMES = 30;
+  private static final int DROP_EVERY_NTH = 4;
+
+  private NetworkTableInstance instance;
+  private LimelightPythonStandIn standIn;
+  private DoubleArrayPublisher requestPublisher;
+  private DoubleArraySubscriber responseSubscriber;
+
+  @BeforeEach
+  void setup() {
+    instance = NetworkTableInstance.create();
+    NetworkTable table = instance.getTable(LIMELIGHT_NAME);
+    requestPublisher = table.getDoubleArrayTopic("llrobot").publish();
+    // Reads every response like VisionIOLimelight does
+    responseSubscriber =
+        table
+            .getDoubleArrayTopic("llpython")
+            .subscribe(
+                new double[0], PubSubOption.keepDuplicates(true), PubSubOption.pollStorage(64));
+    standIn = new LimelightPythonStandIn(instance, LIMELIGHT_NAME, DROP_EVERY_NTH);
+  }
+
+  @AfterEach
+  void teardown() {
+    standIn.close();
+    requestPublisher.close();
+    responseSubscriber.close();
+    instance.close();
+  }
+
+  @Test
+  void answersRequestsAndLossesAreDetected() {
+    var request = new LimelightPythonProtocol.Request();
+    request.sequence = 9;
+    request.poseX = 2.0;
+    request.poseY = 3.0;
+    request.poseThetaRad = 0.5;
+    request.hintTagId = -1;
+    double[] requestValues = new double[LimelightPythonProtocol.REQUEST_LENGTH];
+    LimelightPythonProtocol.encodeRequest(request, requestValues);
+    requestPublisher.set(requestValues);
+
+    for (int frame = 0; frame < FRAMES; frame++) {
+      standIn.processFrame();
+    }
+
+    var tracker = new LimelightPythonProtocol.SequenceTracker();
+    var response = new LimelightPythonProtocol.Response();
+    for (double[] values : responseSubscriber.readQueueValues()) {
+      assertTrue(LimelightPythonProtocol.decodeResponse(values, 0, response));
+      tracker.record(response.sequence);
+      assertEquals(request.sequence, response.requestSequence);
+      assertTrue(response.poseValid);
+      assertEquals(request.poseX, response.poseX);
+      assertEquals(request.poseY, response.poseY);
+      assertEquals(request.poseThetaRad, response.poseThetaRad);
+    }
+
+    int dropped = FRAMES / DROP_EVERY_NTH;
+    assertEquals(FRAMES - dropped, tracker.getReceivedCount());
+    // The last frame is not dropped, so every dropped frame sits between two received ones
+    assertEquals(dropped, tracker.getLostCount());
+  }
+}